@@ -22,6 +22,9 @@ dependencies {
     implementation("org.jsoup:jsoup:1.18.3")
     implementation("com.jayway.jsonpath:json-path:2.9.0")
     implementation("com.google.code.gson:gson:2.12.1")
+    implementation("org.brotli:dec:0.1.2")
+
+    testImplementation("junit:junit:4.13.2")
 
     intellijPlatform {
         // Build 253 = IDEA 2025.3
@@ -13,6 +13,8 @@ import com.intellij.openapi.keymap.Keymap;
 import com.intellij.openapi.keymap.KeymapManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.startup.ProjectActivity;
+import com.fish.toucher.service.BookshelfUpdateChecker;
+import com.fish.toucher.service.CacheJanitor;
 import com.fish.toucher.settings.NovelReaderSettings;
 import com.fish.toucher.ui.HotSearchManager;
 import kotlin.Unit;
@@ -24,7 +26,8 @@ import javax.swing.*;
 
 /**
  * Applies custom keyboard shortcuts from plugin settings to the active keymap on project open.
- * Also shows a notification when the plugin is first installed or updated.
+ * Also shows a notification when the plugin is first installed or updated, and starts the
+ * background services (hot search, bookshelf update check).
  */
 public class ShortcutInitializer implements ProjectActivity {
 
@@ -48,6 +51,11 @@ public class ShortcutInitializer implements ProjectActivity {
             HotSearchManager.getInstance().start();
         }
 
+        // Background check of the bookshelf for new chapters; idempotent across project opens
+        BookshelfUpdateChecker.getInstance().start();
+        // Keeps the chapter cache within its quota
+        CacheJanitor.getInstance().start();
+
         return Unit.INSTANCE;
     }
 
@@ -28,6 +28,16 @@ public class BookSource {
     @SerializedName("content")
     private ContentRule contentRule;
 
+    @SerializedName("rateLimit")
+    private RateLimit rateLimit;
+
+    /** JSON parser behind "json" rules: "smart" (json-smart, default) or "gson". */
+    @SerializedName("jsonProvider")
+    private String jsonProvider;
+
+    @SerializedName("mirror")
+    private Mirror mirror;
+
     // --- Getters and Setters ---
 
     public String getName() { return name; }
@@ -54,6 +64,15 @@ public class BookSource {
     public ContentRule getContentRule() { return contentRule; }
     public void setContentRule(ContentRule contentRule) { this.contentRule = contentRule; }
 
+    public RateLimit getRateLimit() { return rateLimit; }
+    public void setRateLimit(RateLimit rateLimit) { this.rateLimit = rateLimit; }
+
+    public String getJsonProvider() { return jsonProvider; }
+    public void setJsonProvider(String jsonProvider) { this.jsonProvider = jsonProvider; }
+
+    public Mirror getMirror() { return mirror; }
+    public void setMirror(Mirror mirror) { this.mirror = mirror; }
+
     // --- Inner Classes ---
 
     public static class SearchRule {
@@ -82,6 +101,10 @@ public class BookSource {
         @SerializedName("coverUrl")
         private String coverUrl;
 
+        /** Size, content-type and timeout guards for this rule's responses; omitted means defaults. */
+        @SerializedName("limits")
+        private ResponseLimits limits;
+
         public String getUrl() { return url; }
         public void setUrl(String url) { this.url = url; }
 
@@ -108,6 +131,9 @@ public class BookSource {
 
         public String getCoverUrl() { return coverUrl; }
         public void setCoverUrl(String coverUrl) { this.coverUrl = coverUrl; }
+
+        public ResponseLimits getLimits() { return limits; }
+        public void setLimits(ResponseLimits limits) { this.limits = limits; }
     }
 
     public static class ChapterRule {
@@ -130,6 +156,30 @@ public class BookSource {
         @SerializedName("chapterUrl")
         private String chapterUrl;
 
+        /** Rule for the link to the next page, e.g. "a.next@href"; followed until it is missing. */
+        @SerializedName("nextPage")
+        private String nextPage;
+
+        /** URL of page N, using {{bookUrl}} and {{page}}; fetched in parallel when pageCount is known. */
+        @SerializedName("pageUrlTemplate")
+        private String pageUrlTemplate;
+
+        /** Rule for the total page count on the first page; the last number in the text is used. */
+        @SerializedName("pageCount")
+        private String pageCount;
+
+        /** Size, content-type and timeout guards for this rule's responses; omitted means defaults. */
+        @SerializedName("limits")
+        private ResponseLimits limits;
+
+        /** Minutes a cached chapter list is shown without revalidating it; 0 means 24 hours. */
+        @SerializedName("ttlMinutes")
+        private int ttlMinutes;
+
+        /** Regex on the last chapter titles that marks a book as finished; omitted means the built-in one. */
+        @SerializedName("finishedPattern")
+        private String finishedPattern;
+
         public String getUrl() { return url; }
         public void setUrl(String url) { this.url = url; }
 
@@ -150,6 +200,24 @@ public class BookSource {
 
         public String getChapterUrl() { return chapterUrl; }
         public void setChapterUrl(String chapterUrl) { this.chapterUrl = chapterUrl; }
+
+        public String getNextPage() { return nextPage; }
+        public void setNextPage(String nextPage) { this.nextPage = nextPage; }
+
+        public String getPageUrlTemplate() { return pageUrlTemplate; }
+        public void setPageUrlTemplate(String pageUrlTemplate) { this.pageUrlTemplate = pageUrlTemplate; }
+
+        public String getPageCount() { return pageCount; }
+        public void setPageCount(String pageCount) { this.pageCount = pageCount; }
+
+        public ResponseLimits getLimits() { return limits; }
+        public void setLimits(ResponseLimits limits) { this.limits = limits; }
+
+        public int getTtlMinutes() { return ttlMinutes; }
+        public void setTtlMinutes(int ttlMinutes) { this.ttlMinutes = ttlMinutes; }
+
+        public String getFinishedPattern() { return finishedPattern; }
+        public void setFinishedPattern(String finishedPattern) { this.finishedPattern = finishedPattern; }
     }
 
     public static class ContentRule {
@@ -169,6 +237,26 @@ public class BookSource {
         @SerializedName("purify")
         private List<String> purify;
 
+        /** Extract the content while the page streams in instead of parsing the full DOM first (html only). */
+        @SerializedName("stream")
+        private boolean stream;
+
+        /** Rule for the link to the next page, e.g. "a.next@href"; followed until it is missing. */
+        @SerializedName("nextPage")
+        private String nextPage;
+
+        /** URL of page N, using {{chapterUrl}} and {{page}}; fetched in parallel when pageCount is known. */
+        @SerializedName("pageUrlTemplate")
+        private String pageUrlTemplate;
+
+        /** Rule for the total page count on the first page; the last number in the text is used. */
+        @SerializedName("pageCount")
+        private String pageCount;
+
+        /** Size, content-type and timeout guards for this rule's responses; omitted means defaults. */
+        @SerializedName("limits")
+        private ResponseLimits limits;
+
         public String getUrl() { return url; }
         public void setUrl(String url) { this.url = url; }
 
@@ -190,5 +278,118 @@ public class BookSource {
 
         public List<String> getPurify() { return purify; }
         public void setPurify(List<String> purify) { this.purify = purify; }
+
+        public boolean isStream() { return stream; }
+        public void setStream(boolean stream) { this.stream = stream; }
+
+        public String getNextPage() { return nextPage; }
+        public void setNextPage(String nextPage) { this.nextPage = nextPage; }
+
+        public String getPageUrlTemplate() { return pageUrlTemplate; }
+        public void setPageUrlTemplate(String pageUrlTemplate) { this.pageUrlTemplate = pageUrlTemplate; }
+
+        public String getPageCount() { return pageCount; }
+        public void setPageCount(String pageCount) { this.pageCount = pageCount; }
+
+        public ResponseLimits getLimits() { return limits; }
+        public void setLimits(ResponseLimits limits) { this.limits = limits; }
+    }
+
+    /**
+     * Guards on the responses of one rule. Zero or missing values fall back to defaults
+     * chosen per rule (a catalog may legitimately be larger than a chapter).
+     */
+    public static class ResponseLimits {
+
+        /** Largest body accepted, in bytes after decompression; larger responses are aborted. */
+        @SerializedName("maxBytes")
+        private long maxBytes;
+
+        /** Accepted Content-Type prefixes, e.g. ["text/html", "application/json"]. */
+        @SerializedName("contentTypes")
+        private List<String> contentTypes;
+
+        /** Time allowed until the response headers arrive. */
+        @SerializedName("firstByteTimeoutMs")
+        private long firstByteTimeoutMs;
+
+        /** Time allowed for the whole response, body included. */
+        @SerializedName("timeoutMs")
+        private long timeoutMs;
+
+        public long getMaxBytes() { return maxBytes; }
+        public void setMaxBytes(long maxBytes) { this.maxBytes = maxBytes; }
+
+        public List<String> getContentTypes() { return contentTypes; }
+        public void setContentTypes(List<String> contentTypes) { this.contentTypes = contentTypes; }
+
+        public long getFirstByteTimeoutMs() { return firstByteTimeoutMs; }
+        public void setFirstByteTimeoutMs(long firstByteTimeoutMs) { this.firstByteTimeoutMs = firstByteTimeoutMs; }
+
+        public long getTimeoutMs() { return timeoutMs; }
+        public void setTimeoutMs(long timeoutMs) { this.timeoutMs = timeoutMs; }
+    }
+
+    /**
+     * Request throttling for the hosts a source talks to.
+     * Omitted in the JSON means the defaults below apply.
+     */
+    public static class RateLimit {
+
+        /** Sustained request rate per host (token refill rate). */
+        @SerializedName("permitsPerSecond")
+        private double permitsPerSecond = 2.0;
+
+        /** Requests allowed back-to-back before the rate kicks in (bucket size). */
+        @SerializedName("burst")
+        private int burst = 4;
+
+        /** Maximum number of in-flight requests per host. */
+        @SerializedName("maxConcurrent")
+        private int maxConcurrent = 2;
+
+        /** Retries for idempotent GET requests on network errors, 429 and 5xx. */
+        @SerializedName("maxRetries")
+        private int maxRetries = 3;
+
+        public double getPermitsPerSecond() { return permitsPerSecond; }
+        public void setPermitsPerSecond(double permitsPerSecond) { this.permitsPerSecond = permitsPerSecond; }
+
+        public int getBurst() { return burst; }
+        public void setBurst(int burst) { this.burst = burst; }
+
+        public int getMaxConcurrent() { return maxConcurrent; }
+        public void setMaxConcurrent(int maxConcurrent) { this.maxConcurrent = maxConcurrent; }
+
+        public int getMaxRetries() { return maxRetries; }
+        public void setMaxRetries(int maxRetries) { this.maxRetries = maxRetries; }
+    }
+
+    /**
+     * Another source serving the same books under a different host. A chapter that is slow to load
+     * from this source is requested from the mirror as well, and whichever answers first is used.
+     */
+    public static class Mirror {
+
+        /** Name of the mirror book source. */
+        @SerializedName("source")
+        private String source;
+
+        /** Regex matched against the chapter URL; chapters it does not match are not hedged. */
+        @SerializedName("urlPattern")
+        private String urlPattern;
+
+        /** Replacement producing the mirror's chapter URL, may use groups, e.g. "https://m.example.com/$1". */
+        @SerializedName("urlReplacement")
+        private String urlReplacement;
+
+        public String getSource() { return source; }
+        public void setSource(String source) { this.source = source; }
+
+        public String getUrlPattern() { return urlPattern; }
+        public void setUrlPattern(String urlPattern) { this.urlPattern = urlPattern; }
+
+        public String getUrlReplacement() { return urlReplacement; }
+        public void setUrlReplacement(String urlReplacement) { this.urlReplacement = urlReplacement; }
     }
 }
@@ -0,0 +1,78 @@
+package com.fish.toucher.service;
+
+import com.fish.toucher.model.BookSource;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compiled {@link BookSource.ResponseLimits} of one rule, with the rule's defaults filled in.
+ */
+final class BodyLimits {
+
+    static final long SEARCH_MAX_BYTES = 2L << 20;
+    static final long CATALOG_MAX_BYTES = 8L << 20;
+    static final long CONTENT_MAX_BYTES = 4L << 20;
+
+    private static final Duration DEFAULT_FIRST_BYTE_TIMEOUT = Duration.ofSeconds(15);
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+
+    // Sites serve JSON as text/html and HTML as text/plain often enough that both lists are generous;
+    // the point is to keep out images, archives and downloads a wrong URL can lead to
+    private static final List<String> HTML_TYPES = List.of(
+            "text/html", "application/xhtml+xml", "text/plain", "text/xml", "application/xml");
+    private static final List<String> JSON_TYPES = List.of(
+            "application/json", "text/json", "application/javascript", "text/javascript", "text/plain", "text/html");
+
+    final long maxBytes;
+    final List<String> contentTypes;
+    final Duration firstByteTimeout;
+    final Duration timeout;
+
+    private BodyLimits(long maxBytes, List<String> contentTypes, Duration firstByteTimeout, Duration timeout) {
+        this.maxBytes = maxBytes;
+        this.contentTypes = contentTypes;
+        this.firstByteTimeout = firstByteTimeout;
+        this.timeout = timeout;
+    }
+
+    static BodyLimits of(BookSource.ResponseLimits rule, long defaultMaxBytes, boolean json) {
+        long maxBytes = rule != null && rule.getMaxBytes() > 0 ? rule.getMaxBytes() : defaultMaxBytes;
+        List<String> types = json ? JSON_TYPES : HTML_TYPES;
+        if (rule != null && rule.getContentTypes() != null && !rule.getContentTypes().isEmpty()) {
+            types = new ArrayList<>();
+            for (String type : rule.getContentTypes()) {
+                if (type != null && !type.isBlank()) {
+                    types.add(type.trim().toLowerCase());
+                }
+            }
+        }
+        Duration firstByte = rule != null && rule.getFirstByteTimeoutMs() > 0
+                ? Duration.ofMillis(rule.getFirstByteTimeoutMs()) : DEFAULT_FIRST_BYTE_TIMEOUT;
+        Duration timeout = rule != null && rule.getTimeoutMs() > 0
+                ? Duration.ofMillis(rule.getTimeoutMs()) : DEFAULT_TIMEOUT;
+        // The wait for the first byte is part of the total
+        if (firstByte.compareTo(timeout) > 0) {
+            firstByte = timeout;
+        }
+        return new BodyLimits(maxBytes, types, firstByte, timeout);
+    }
+
+    /**
+     * Whether a response with this Content-Type header is accepted. A missing header is let through:
+     * the charset and parser sniffing downstream cope with it.
+     */
+    boolean allowsContentType(String contentType) {
+        if (contentType == null || contentType.isBlank()) {
+            return true;
+        }
+        String mediaType = contentType.split(";")[0].trim().toLowerCase();
+        for (String allowed : contentTypes) {
+            if (mediaType.startsWith(allowed)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,172 @@
+package com.fish.toucher.service;
+
+import com.google.gson.Gson;
+import com.intellij.openapi.diagnostic.Logger;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.BitSet;
+
+/**
+ * What is cached for one book, kept next to its content as {@code manifest.json}: which chapters
+ * are stored, their total size, and how the book was used.
+ * <p>
+ * It is loaded once per book and updated in memory as chapters are cached, so asking whether a
+ * chapter is cached, or how many are, never opens the segment. The chapter set is by catalog
+ * index, so it is rebuilt whenever the catalog changes. It is written back lazily; the size and
+ * modification time of the segment index and the size of the catalog it was written against act
+ * as its validator, and a manifest that does not match them (the IDE stopped before it was saved)
+ * must be rebuilt with {@link #sync}.
+ * <p>
+ * Where both are locked, the book's store is locked before its manifest.
+ */
+final class BookManifest {
+
+    private static final Logger LOG = Logger.getInstance(BookManifest.class);
+
+    static final String FILE = "manifest.json";
+
+    private String bookUrl;
+    /** Indices of the stored chapters, as the words of a BitSet. */
+    private long[] chapters;
+    private long storedBytes;
+    private long rawBytes;
+    private long lastAccess;
+    private int reads;
+    private int lastChapter = -1;
+    private long indexLength;
+    private long indexModified;
+    private long catalogLength;
+
+    private transient BitSet cached = new BitSet();
+    private transient boolean dirty;
+
+    /**
+     * The saved manifest of a book directory, or an empty one; check {@link #isCurrent} before
+     * trusting it.
+     */
+    static BookManifest read(Path bookDir, Gson gson) {
+        Path file = bookDir.resolve(FILE);
+        BookManifest manifest = null;
+        if (Files.exists(file)) {
+            try {
+                manifest = gson.fromJson(Files.readString(file, StandardCharsets.UTF_8), BookManifest.class);
+            } catch (Exception e) {
+                LOG.warn("Failed to read cache manifest, rebuilding it: " + file, e);
+            }
+        }
+        if (manifest == null) {
+            manifest = new BookManifest();
+        }
+        manifest.cached = manifest.chapters != null ? BitSet.valueOf(manifest.chapters) : new BitSet();
+        return manifest;
+    }
+
+    /** Whether the manifest was saved against the book's current segment index and catalog. */
+    synchronized boolean isCurrent(Path bookDir) throws IOException {
+        Path indexFile = bookDir.resolve(BookSegmentStore.INDEX_FILE);
+        if (!Files.exists(indexFile)) {
+            return indexLength == 0 && cached.isEmpty();
+        }
+        BasicFileAttributes attrs = Files.readAttributes(indexFile, BasicFileAttributes.class);
+        return attrs.size() == indexLength && attrs.lastModifiedTime().toMillis() == indexModified
+                && catalogLength(bookDir) == catalogLength;
+    }
+
+    synchronized String getBookUrl() { return bookUrl; }
+
+    synchronized boolean contains(int chapterIndex) {
+        return chapterIndex >= 0 && cached.get(chapterIndex);
+    }
+
+    synchronized int count() {
+        return cached.cardinality();
+    }
+
+    synchronized long getStoredBytes() { return storedBytes; }
+
+    synchronized long getRawBytes() { return rawBytes; }
+
+    synchronized long getLastAccess() { return lastAccess; }
+
+    synchronized int getReads() { return reads; }
+
+    synchronized int getLastChapter() { return lastChapter; }
+
+    /** A chapter was opened. */
+    synchronized void recordRead(String bookUrl, int chapterIndex) {
+        this.bookUrl = bookUrl;
+        lastAccess = System.currentTimeMillis();
+        lastChapter = chapterIndex;
+        reads++;
+        dirty = true;
+    }
+
+    /**
+     * A chapter was written to the store.
+     *
+     * @param chapterIndex its index in the cached catalog, or -1 if the catalog does not list it
+     */
+    synchronized void recordWrite(String bookUrl, int chapterIndex, BookSegmentStore store) {
+        this.bookUrl = bookUrl;
+        lastAccess = System.currentTimeMillis();
+        if (chapterIndex >= 0) {
+            cached.set(chapterIndex);
+        }
+        storedBytes = store.liveBytes();
+        rawBytes = store.rawBytes();
+        dirty = true;
+    }
+
+    /**
+     * Take the chapter set and sizes from the store, after changes too broad to track one by one:
+     * a new catalog, an eviction, a dropped corrupt entry.
+     */
+    void sync(BookSegmentStore store, ChapterKeys keys) {
+        synchronized (store) {
+            synchronized (this) {
+                cached = new BitSet();
+                for (int i = 0; i < keys.size(); i++) {
+                    if (store.contains(keys.keyAt(i))) {
+                        cached.set(i);
+                    }
+                }
+                storedBytes = store.liveBytes();
+                rawBytes = store.rawBytes();
+                dirty = true;
+            }
+        }
+    }
+
+    /**
+     * Write the manifest if it changed since it was loaded or last saved. Call with the book's
+     * store locked (or closed), so the validator matches the chapter set being written.
+     */
+    synchronized void save(Path bookDir, Gson gson) throws IOException {
+        if (!dirty || !Files.isDirectory(bookDir)) {
+            return;
+        }
+        Path indexFile = bookDir.resolve(BookSegmentStore.INDEX_FILE);
+        if (Files.exists(indexFile)) {
+            BasicFileAttributes attrs = Files.readAttributes(indexFile, BasicFileAttributes.class);
+            indexLength = attrs.size();
+            indexModified = attrs.lastModifiedTime().toMillis();
+        } else {
+            indexLength = 0;
+            indexModified = 0;
+        }
+        catalogLength = catalogLength(bookDir);
+        chapters = cached.toLongArray();
+        Files.writeString(bookDir.resolve(FILE), gson.toJson(this), StandardCharsets.UTF_8);
+        dirty = false;
+    }
+
+    /** Size of the cached catalog; its mtime changes on every revalidation, so it is not used. */
+    private static long catalogLength(Path bookDir) throws IOException {
+        Path catalog = bookDir.resolve(ChapterCacheManager.CHAPTER_LIST_FILE);
+        return Files.exists(catalog) ? Files.size(catalog) : 0;
+    }
+}
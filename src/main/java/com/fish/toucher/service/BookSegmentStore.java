@@ -0,0 +1,362 @@
+package com.fish.toucher.service;
+
+import com.intellij.openapi.diagnostic.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Cached chapter content of one book, packed into a single append-only segment file.
+ * <p>
+ * Chapters are stored under a 64-bit content key (see {@link ChapterKeys}), not their position in
+ * the catalog, so a renumbered catalog leaves the store untouched.
+ * {@code content.seg} holds the chapter bodies back to back; {@code content.idx} is a log of
+ * fixed-size records (key, offset, length, size before compression, CRC32C) replayed on open,
+ * later records overriding earlier ones and a negative length marking a removal. Both files are only ever
+ * appended to, so a crash can at worst leave a torn last record, which is ignored. Reads are
+ * positioned reads on one open channel and verify the checksum.
+ * <p>
+ * Rewriting a chapter leaves its old bytes behind as garbage; once garbage makes up most of the
+ * segment it is compacted by copying the live chapters into a fresh segment.
+ */
+final class BookSegmentStore implements Closeable {
+
+    private static final Logger LOG = Logger.getInstance(BookSegmentStore.class);
+
+    static final String SEGMENT_FILE = "content.seg";
+    static final String INDEX_FILE = "content.idx";
+
+    private static final int INDEX_MAGIC = 0x46544958; // "FTIX"
+    private static final int INDEX_VERSION = 3;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_SIZE = 28;
+    /** Compact once garbage exceeds both this size and the live data. */
+    private static final long COMPACT_MIN_GARBAGE = 1 << 20;
+
+    private record Slot(long offset, int length, int rawLength, int checksum) {}
+
+    private final Path segmentFile;
+    private final Path indexFile;
+    private final Map<Long, Slot> slots = new HashMap<>();
+    private FileChannel segment;
+    private FileChannel index;
+    private long segmentSize;
+    private long liveBytes;
+    private long rawBytes;
+    private boolean closed;
+
+    private BookSegmentStore(Path bookDir) {
+        this.segmentFile = bookDir.resolve(SEGMENT_FILE);
+        this.indexFile = bookDir.resolve(INDEX_FILE);
+    }
+
+    /**
+     * Open the store of a book directory, loading its index. No file is created until the first write.
+     */
+    static BookSegmentStore open(Path bookDir) throws IOException {
+        BookSegmentStore store = new BookSegmentStore(bookDir);
+        store.load();
+        return store;
+    }
+
+    synchronized boolean contains(long key) {
+        return slots.containsKey(key);
+    }
+
+    synchronized int size() {
+        return slots.size();
+    }
+
+    /** Keys of the stored chapters, in ascending order. */
+    synchronized long[] keys() {
+        return slots.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+    }
+
+    /** Bytes of live chapter data. */
+    synchronized long liveBytes() {
+        return liveBytes;
+    }
+
+    /** Size of the live chapters before compression. */
+    synchronized long rawBytes() {
+        return rawBytes;
+    }
+
+    /** Bytes on disk, including garbage not yet compacted. */
+    synchronized long diskBytes() {
+        return segmentSize;
+    }
+
+    /**
+     * The stored bytes of a chapter, or null if it is not stored or its checksum does not match,
+     * in which case the entry is dropped.
+     */
+    synchronized byte[] read(long key) throws IOException {
+        Slot slot = slots.get(key);
+        if (slot == null) {
+            return null;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(slot.length);
+        FileChannel channel = segment(false);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, slot.offset + buf.position()) < 0) {
+                break;
+            }
+        }
+        byte[] data = buf.array();
+        if (buf.hasRemaining() || checksum(data) != slot.checksum) {
+            LOG.warn("Corrupt cached chapter " + Long.toHexString(key) + " in " + segmentFile + ", dropping it");
+            remove(key);
+            return null;
+        }
+        return data;
+    }
+
+    /**
+     * @param rawLength size of the chapter before it was compressed into {@code data}, for statistics
+     */
+    synchronized void write(long key, byte[] data, int rawLength) throws IOException {
+        FileChannel channel = segment(true);
+        long offset = segmentSize;
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        while (buf.hasRemaining()) {
+            channel.write(buf, offset + buf.position());
+        }
+        segmentSize += data.length;
+        // Data first: an index record never points at bytes that were not written
+        Slot slot = new Slot(offset, data.length, rawLength, checksum(data));
+        appendRecord(key, slot);
+        forget(slots.put(key, slot));
+        liveBytes += data.length;
+        rawBytes += rawLength;
+        compactIfWasteful();
+    }
+
+    synchronized void remove(long key) throws IOException {
+        Slot old = slots.remove(key);
+        if (old != null) {
+            appendRecord(key, new Slot(0, -1, 0, 0));
+            forget(old);
+            compactIfWasteful();
+        }
+    }
+
+    /** Stored size of a chapter, or -1 if it is not stored. */
+    synchronized int storedLength(long key) {
+        Slot slot = slots.get(key);
+        return slot != null ? slot.length : -1;
+    }
+
+    /**
+     * Drop many chapters at once and compact right away, rather than appending a record per
+     * chapter and waiting for the garbage to pile up.
+     *
+     * @return bytes freed on disk
+     */
+    synchronized long evict(Collection<Long> keys) throws IOException {
+        boolean removed = false;
+        for (long key : keys) {
+            Slot old = slots.remove(key);
+            forget(old);
+            removed |= old != null;
+        }
+        if (!removed) {
+            return 0;
+        }
+        long before = segmentSize;
+        compact();
+        return before - segmentSize;
+    }
+
+    /**
+     * Copy the live chapters into a new segment and swap it in.
+     */
+    synchronized void compact() throws IOException {
+        if (slots.isEmpty()) {
+            closeChannels();
+            Files.deleteIfExists(segmentFile);
+            Files.deleteIfExists(indexFile);
+            segmentSize = 0;
+            return;
+        }
+        Path temp = segmentFile.resolveSibling(SEGMENT_FILE + ".compact");
+        Map<Long, Slot> compacted = new HashMap<>();
+        FileChannel source = segment(false);
+        try (FileChannel target = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long position = 0;
+            // In segment order, so the copy reads the old segment front to back
+            List<Map.Entry<Long, Slot>> live = new ArrayList<>(slots.entrySet());
+            live.sort(Comparator.comparingLong(entry -> entry.getValue().offset));
+            for (Map.Entry<Long, Slot> entry : live) {
+                Slot slot = entry.getValue();
+                long copied = 0;
+                while (copied < slot.length) {
+                    copied += source.transferTo(slot.offset + copied, slot.length - copied, target);
+                }
+                compacted.put(entry.getKey(), new Slot(position, slot.length, slot.rawLength, slot.checksum));
+                position += slot.length;
+            }
+        }
+        long before = segmentSize;
+        closeChannels();
+        Files.move(temp, segmentFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        slots.clear();
+        slots.putAll(compacted);
+        segmentSize = liveBytes;
+        rewriteIndex();
+        LOG.info("Compacted " + segmentFile + ": " + before / 1024 + "K -> " + segmentSize / 1024 + "K");
+    }
+
+    /**
+     * Close the files. The store cannot be used afterwards: a store opened again for the same
+     * book would not see its writes.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        closeChannels();
+    }
+
+    /** Take a replaced or removed chapter out of the totals. */
+    private void forget(Slot old) {
+        if (old != null) {
+            liveBytes -= old.length;
+            rawBytes -= old.rawLength;
+        }
+    }
+
+    private void compactIfWasteful() throws IOException {
+        long garbage = segmentSize - liveBytes;
+        if (garbage > COMPACT_MIN_GARBAGE && garbage > liveBytes) {
+            compact();
+        }
+    }
+
+    private void load() throws IOException {
+        segmentSize = Files.exists(segmentFile) ? Files.size(segmentFile) : 0;
+        if (!Files.exists(indexFile)) {
+            return;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(indexFile));
+        int version = buf.remaining() >= HEADER_SIZE && buf.getInt() == INDEX_MAGIC ? buf.getInt() : -1;
+        if (version != INDEX_VERSION) {
+            // Without its index the segment is unusable; start over
+            LOG.warn("Unreadable chapter index " + indexFile + ", dropping cached content");
+            Files.deleteIfExists(indexFile);
+            Files.deleteIfExists(segmentFile);
+            segmentSize = 0;
+            return;
+        }
+        while (buf.remaining() >= RECORD_SIZE) {
+            long key = buf.getLong();
+            Slot slot = new Slot(buf.getLong(), buf.getInt(), buf.getInt(), buf.getInt());
+            if (slot.length < 0) {
+                slots.remove(key);
+            } else if (slot.offset + slot.length <= segmentSize) {
+                slots.put(key, slot);
+            }
+        }
+        for (Slot slot : slots.values()) {
+            liveBytes += slot.length;
+            rawBytes += slot.rawLength;
+        }
+    }
+
+    private void appendRecord(long key, Slot slot) throws IOException {
+        FileChannel channel = index();
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE)
+                .putLong(key).putLong(slot.offset).putInt(slot.length).putInt(slot.rawLength).putInt(slot.checksum)
+                .flip();
+        // A torn record from a crash would shift every record after it
+        long end = channel.size();
+        long position = end - (end - HEADER_SIZE) % RECORD_SIZE;
+        while (record.hasRemaining()) {
+            channel.write(record, position + record.position());
+        }
+    }
+
+    /**
+     * Replace the index log with one record per live chapter.
+     */
+    private void rewriteIndex() throws IOException {
+        if (closed) {
+            throw new IOException("Chapter segment closed: " + segmentFile);
+        }
+        if (index != null) {
+            index.close();
+            index = null;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + slots.size() * RECORD_SIZE);
+        buf.putInt(INDEX_MAGIC).putInt(INDEX_VERSION);
+        for (Map.Entry<Long, Slot> entry : slots.entrySet()) {
+            Slot slot = entry.getValue();
+            buf.putLong(entry.getKey()).putLong(slot.offset).putInt(slot.length).putInt(slot.rawLength).putInt(slot.checksum);
+        }
+        Path temp = indexFile.resolveSibling(INDEX_FILE + ".tmp");
+        Files.write(temp, buf.array());
+        Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private FileChannel segment(boolean forWrite) throws IOException {
+        if (closed) {
+            throw new IOException("Chapter segment closed: " + segmentFile);
+        }
+        if (segment == null) {
+            if (!forWrite && !Files.exists(segmentFile)) {
+                throw new IOException("Missing segment file " + segmentFile);
+            }
+            segment = FileChannel.open(segmentFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+        return segment;
+    }
+
+    private FileChannel index() throws IOException {
+        if (closed) {
+            throw new IOException("Chapter segment closed: " + segmentFile);
+        }
+        if (index == null) {
+            boolean exists = Files.exists(indexFile);
+            index = FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            if (!exists || index.size() < HEADER_SIZE) {
+                index.truncate(0);
+                index.write(ByteBuffer.allocate(HEADER_SIZE).putInt(INDEX_MAGIC).putInt(INDEX_VERSION).flip(), 0);
+            }
+        }
+        return index;
+    }
+
+    private void closeChannels() throws IOException {
+        try {
+            if (segment != null) {
+                segment.close();
+            }
+        } finally {
+            segment = null;
+            if (index != null) {
+                index.close();
+                index = null;
+            }
+        }
+    }
+
+    private static int checksum(byte[] data) {
+        CRC32C crc = new CRC32C();
+        crc.update(data);
+        return (int) crc.getValue();
+    }
+}
@@ -16,6 +16,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 
 public class BookSourceManager {
@@ -25,7 +26,8 @@ public class BookSourceManager {
 
     private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
     private final Path sourcesDir;
-    private final List<BookSource> sources = new ArrayList<>();
+    // Read by fetch threads while the settings page edits it; edits are rare
+    private final List<BookSource> sources = new CopyOnWriteArrayList<>();
 
     private BookSourceManager() {
         sourcesDir = Paths.get(System.getProperty("user.home"), ".config", "fish-toucher", "sources");
@@ -42,8 +44,11 @@ public class BookSourceManager {
     }
 
     public void loadAll() {
-        sources.clear();
+        CompiledSource.invalidateAll();
+        NegativeCache.getInstance().invalidateAll();
+        List<BookSource> loaded = new ArrayList<>();
         if (!Files.isDirectory(sourcesDir)) {
+            sources.clear();
             return;
         }
         try (DirectoryStream<Path> stream = Files.newDirectoryStream(sourcesDir, "*.json")) {
@@ -52,7 +57,7 @@ public class BookSourceManager {
                     String json = Files.readString(file, StandardCharsets.UTF_8);
                     BookSource source = gson.fromJson(json, BookSource.class);
                     if (source != null && source.getName() != null) {
-                        sources.add(source);
+                        loaded.add(source);
                     }
                 } catch (Exception e) {
                     LOG.warn("Failed to parse book source file: " + file, e);
@@ -61,6 +66,8 @@ public class BookSourceManager {
         } catch (IOException e) {
             LOG.error("Failed to scan sources directory", e);
         }
+        sources.clear();
+        sources.addAll(loaded);
         LOG.info("Loaded " + sources.size() + " book sources");
     }
 
@@ -74,12 +81,29 @@ public class BookSourceManager {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Enabled sources, healthiest first: working circuits, higher success rate, then lower latency.
+     */
+    public List<BookSource> getEnabledSourcesByHealth() {
+        return SourceHealthTracker.getInstance().sortByHealth(getEnabledSources());
+    }
+
+    /**
+     * All sources, healthiest first.
+     */
+    public List<BookSource> getSourcesByHealth() {
+        return SourceHealthTracker.getInstance().sortByHealth(getSources());
+    }
+
     public void save(BookSource source) {
         String filename = sanitizeName(source.getName()) + ".json";
         Path file = sourcesDir.resolve(filename);
         try {
             String json = gson.toJson(source);
             Files.writeString(file, json, StandardCharsets.UTF_8);
+            CompiledSource.invalidate(source.getName());
+            NegativeCache.getInstance().invalidate(source.getName());
+            HostRateLimiter.removeSource(source.getName());
             // Update in-memory list
             sources.removeIf(s -> s.getName().equals(source.getName()));
             sources.add(source);
@@ -94,6 +118,10 @@ public class BookSourceManager {
         Path file = sourcesDir.resolve(filename);
         try {
             Files.deleteIfExists(file);
+            CompiledSource.invalidate(source.getName());
+            NegativeCache.getInstance().invalidate(source.getName());
+            SourceHealthTracker.getInstance().remove(source.getName());
+            HostRateLimiter.removeSource(source.getName());
             sources.removeIf(s -> s.getName().equals(source.getName()));
             LOG.info("Deleted book source: " + source.getName());
         } catch (IOException e) {
@@ -14,6 +14,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public class BookshelfManager {
 
@@ -41,7 +42,7 @@ public class BookshelfManager {
         return INSTANCE;
     }
 
-    public void load() {
+    public synchronized void load() {
         books.clear();
         if (!Files.exists(bookshelfFile)) {
             return;
@@ -58,7 +59,7 @@ public class BookshelfManager {
         }
     }
 
-    public void save() {
+    public synchronized void save() {
         try {
             String json = gson.toJson(books, BOOK_LIST_TYPE);
             Files.writeString(bookshelfFile, json, StandardCharsets.UTF_8);
@@ -67,18 +68,18 @@ public class BookshelfManager {
         }
     }
 
-    public void addBook(BookshelfItem item) {
+    public synchronized void addBook(BookshelfItem item) {
         books.removeIf(b -> b.getBookUrl() != null && b.getBookUrl().equals(item.getBookUrl()));
         books.add(0, item);
         save();
     }
 
-    public void removeBook(BookshelfItem item) {
+    public synchronized void removeBook(BookshelfItem item) {
         books.removeIf(b -> b.getBookUrl() != null && b.getBookUrl().equals(item.getBookUrl()));
         save();
     }
 
-    public void updateProgress(BookshelfItem item, int chapterIndex, String chapterName) {
+    public synchronized void updateProgress(BookshelfItem item, int chapterIndex, String chapterName) {
         for (BookshelfItem book : books) {
             if (book.getBookUrl() != null && book.getBookUrl().equals(item.getBookUrl())) {
                 book.setLastReadChapter(chapterIndex);
@@ -90,7 +91,40 @@ public class BookshelfManager {
         }
     }
 
-    public BookshelfItem findByBookUrl(String bookUrl) {
+    /**
+     * Keep the reading position on the same chapter after the catalog was renumbered.
+     * If the chapter was removed, the position stays where it was.
+     */
+    public synchronized void remapProgress(String bookUrl, ChapterListDiff diff) {
+        BookshelfItem book = findByBookUrl(bookUrl);
+        if (book == null) {
+            return;
+        }
+        int newIndex = diff.newIndexOf(book.getLastReadChapter());
+        if (newIndex >= 0 && newIndex != book.getLastReadChapter()) {
+            book.setLastReadChapter(newIndex);
+            save();
+        }
+    }
+
+    /**
+     * Record the chapter counts found by a catalog check, saving the shelf once.
+     * @param totals book URL → number of chapters
+     */
+    public synchronized void updateTotalChapters(Map<String, Integer> totals) {
+        if (totals.isEmpty()) {
+            return;
+        }
+        for (BookshelfItem book : books) {
+            Integer total = totals.get(book.getBookUrl());
+            if (total != null) {
+                book.setTotalChapters(total);
+            }
+        }
+        save();
+    }
+
+    public synchronized BookshelfItem findByBookUrl(String bookUrl) {
         for (BookshelfItem book : books) {
             if (book.getBookUrl() != null && book.getBookUrl().equals(bookUrl)) {
                 return book;
@@ -99,7 +133,7 @@ public class BookshelfManager {
         return null;
     }
 
-    public List<BookshelfItem> getBooks() {
+    public synchronized List<BookshelfItem> getBooks() {
         return new ArrayList<>(books);
     }
 }
@@ -0,0 +1,169 @@
+package com.fish.toucher.service;
+
+import com.fish.toucher.model.BookSource;
+import com.fish.toucher.model.BookshelfItem;
+import com.fish.toucher.settings.NovelReaderSettings;
+import com.intellij.notification.NotificationGroupManager;
+import com.intellij.notification.NotificationType;
+import com.intellij.openapi.diagnostic.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Periodically checks every book on the shelf for new chapters.
+ * <p>
+ * A round runs as one {@link FetchExecutor} task, one book at a time with a randomized pause in
+ * between, so a large shelf trickles requests instead of bursting them at a site. Each check is
+ * the conditional, incremental {@link OnlineBookFetcher#refreshChapterList} refresh, so an unchanged
+ * catalog usually costs a 304. Books whose catalog was refreshed within the interval are skipped,
+ * and so are finished books until their much longer catalog TTL runs out.
+ * New chapters are reported in one aggregated notification per round.
+ */
+public class BookshelfUpdateChecker {
+
+    private static final Logger LOG = Logger.getInstance(BookshelfUpdateChecker.class);
+    private static final BookshelfUpdateChecker INSTANCE = new BookshelfUpdateChecker();
+
+    /** Delay of the first round after startup, so it does not compete with project opening. */
+    private static final long INITIAL_DELAY_MS = TimeUnit.MINUTES.toMillis(2);
+    private static final long MIN_SPACING_MS = 2_000;
+    private static final long MAX_SPACING_MS = 6_000;
+    /** Books named in the notification; the rest are only counted. */
+    private static final int MAX_LISTED_BOOKS = 8;
+
+    private final AtomicBoolean checking = new AtomicBoolean();
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> checkTask;
+
+    public static BookshelfUpdateChecker getInstance() {
+        return INSTANCE;
+    }
+
+    private BookshelfUpdateChecker() {}
+
+    public synchronized void start() {
+        if (scheduler != null) return;
+        // Only timing runs here; the round itself goes to FetchExecutor
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "BookshelfUpdateChecker");
+            t.setDaemon(true);
+            return t;
+        });
+        schedule();
+    }
+
+    /**
+     * Called when the check interval changes in settings.
+     */
+    public synchronized void reschedule() {
+        if (scheduler == null) return;
+        if (checkTask != null) checkTask.cancel(false);
+        schedule();
+    }
+
+    private void schedule() {
+        int minutes = NovelReaderSettings.getInstance().getBookshelfCheckIntervalMinutes();
+        if (minutes <= 0) {
+            LOG.info("schedule: bookshelf update check disabled");
+            checkTask = null;
+            return;
+        }
+        long periodMs = TimeUnit.MINUTES.toMillis(minutes);
+        // Jitter the start so several IDE instances do not check in lockstep
+        long initialDelayMs = INITIAL_DELAY_MS + ThreadLocalRandom.current().nextLong(periodMs / 10 + 1);
+        checkTask = scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                FetchExecutor.getInstance().execute("bookshelf-check", () -> checkAll(periodMs));
+            } catch (RejectedExecutionException e) {
+                LOG.warn("schedule: bookshelf check skipped, fetch executor is saturated");
+            }
+        }, initialDelayMs, periodMs, TimeUnit.MILLISECONDS);
+        LOG.info("schedule: checking bookshelf every " + minutes + " min, first in " + initialDelayMs / 1000 + " s");
+    }
+
+    private void checkAll(long periodMs) {
+        if (!checking.compareAndSet(false, true)) return;
+        try {
+            Map<String, BookSource> sources = new HashMap<>();
+            for (BookSource source : BookSourceManager.getInstance().getSources()) {
+                if (source.isEnabled() && source.getName() != null) {
+                    sources.put(source.getName(), source);
+                }
+            }
+
+            ChapterCacheManager cacheManager = ChapterCacheManager.getInstance();
+            OnlineBookFetcher fetcher = new OnlineBookFetcher();
+            Map<String, Integer> totals = new LinkedHashMap<>();
+            List<String> updated = new ArrayList<>();
+            int checked = 0;
+
+            for (BookshelfItem book : BookshelfManager.getInstance().getBooks()) {
+                BookSource source = sources.get(book.getSourceName());
+                if (source == null || book.getBookUrl() == null) {
+                    continue;
+                }
+                // Opened (and thus refreshed) recently: nothing to learn from another request
+                if (cacheManager.getChapterListAgeMs(book.getBookUrl()) < periodMs) {
+                    continue;
+                }
+                // A finished book gets no new chapters; its list is checked once its own TTL runs out
+                ChapterCacheManager.CachedChapterList cached = cacheManager.getCachedChapterList(book.getBookUrl(), source);
+                if (cached != null && cached.finished() && !cached.stale()) {
+                    continue;
+                }
+                if (checked++ > 0) {
+                    Thread.sleep(ThreadLocalRandom.current().nextLong(MIN_SPACING_MS, MAX_SPACING_MS + 1));
+                }
+
+                ChapterListDiff diff = fetcher.refreshChapterList(source, book.getBookUrl());
+                int total = diff.getChapters().size();
+                if (total == 0) {
+                    continue;
+                }
+                int before = book.getTotalChapters() > 0 ? book.getTotalChapters() : diff.getPreviousSize();
+                if (total != book.getTotalChapters()) {
+                    totals.put(book.getBookUrl(), total);
+                }
+                if (before > 0 && total > before) {
+                    updated.add(book.getName() + " (+" + (total - before) + ")");
+                }
+            }
+
+            BookshelfManager.getInstance().updateTotalChapters(totals);
+            LOG.info("checkAll: checked " + checked + " book(s), " + updated.size() + " with new chapters");
+            if (!updated.isEmpty()) {
+                notifyUpdates(updated);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            checking.set(false);
+        }
+    }
+
+    private void notifyUpdates(List<String> updated) {
+        StringBuilder content = new StringBuilder();
+        int listed = Math.min(updated.size(), MAX_LISTED_BOOKS);
+        content.append(String.join("\u3001", updated.subList(0, listed)));
+        if (updated.size() > listed) {
+            content.append(" \u7b49 ").append(updated.size()).append(" \u672c");
+        }
+        // Notifications may be posted from any thread; nothing here needs the EDT
+        NotificationGroupManager.getInstance()
+                .getNotificationGroup("Fish Toucher")
+                .createNotification("\u4e66\u67b6\u66f4\u65b0: " + updated.size() + " \u672c\u4e66\u6709\u65b0\u7ae0\u8282",
+                        content.toString(), NotificationType.INFORMATION)
+                .notify(null);
+    }
+}
@@ -0,0 +1,177 @@
+package com.fish.toucher.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Streams a response body like {@link HttpResponse.BodySubscribers#ofInputStream()}, but gives up
+ * on it as soon as it exceeds the allowed size or takes longer than the allowed time. Aborting
+ * cancels the subscription, which closes the connection instead of draining the rest, and the
+ * reader of the stream gets a {@link FetchException} of kind TOO_LARGE or BODY_TIMEOUT
+ * (see {@link #unwrap}).
+ * <p>
+ * The timeout fires on a timer thread while the HTTP client may be delivering data, so every
+ * signal to the downstream subscriber goes through this object's lock, and the first terminal
+ * signal, whether from upstream or an abort, is the only one passed on. The upstream is cancelled
+ * outside the lock, since cancelling may call back into the client.
+ * <p>
+ * Once the body has ended, however it ended (complete, failed, aborted, or closed early by its
+ * reader), the {@code onDone} callback runs exactly once.
+ */
+final class BoundedBodySubscriber implements HttpResponse.BodySubscriber<InputStream> {
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "OnlineBookFetcher-body-timer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final HttpResponse.BodySubscriber<InputStream> downstream = HttpResponse.BodySubscribers.ofInputStream();
+    private final String url;
+    private final long maxBytes;
+    private final long endNanos;
+    private final Runnable onDone;
+    private final AtomicBoolean done = new AtomicBoolean();
+    private volatile Flow.Subscription subscription;
+    private volatile ScheduledFuture<?> timer;
+    /** Guarded by this; once set, nothing more reaches the downstream. */
+    private boolean terminated;
+    private long received;
+
+    private BoundedBodySubscriber(String url, long maxBytes, long endNanos, Runnable onDone) {
+        this.url = url;
+        this.maxBytes = maxBytes;
+        this.endNanos = endNanos;
+        this.onDone = onDone;
+    }
+
+    /**
+     * @param endNanos {@link System#nanoTime} by which the whole body must have arrived; the wait
+     *                 for the headers counts against it
+     * @param onDone   run once the body has ended, e.g. to free the request's concurrency slot
+     */
+    static HttpResponse.BodyHandler<InputStream> handler(String url, long maxBytes, long endNanos, Runnable onDone) {
+        return info -> new BoundedBodySubscriber(url, maxBytes, endNanos, onDone);
+    }
+
+    /**
+     * The guard's error behind an IOException thrown by a read of a guarded body, or the
+     * exception itself if the guard was not involved.
+     */
+    static IOException unwrap(IOException e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof FetchException fe) {
+                return fe;
+            }
+        }
+        return e;
+    }
+
+    @Override
+    public CompletionStage<InputStream> getBody() {
+        return downstream.getBody();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        long delayNanos = Math.max(0, endNanos - System.nanoTime());
+        timer = TIMER.schedule(() -> abort(new FetchException(url, FetchException.Kind.BODY_TIMEOUT,
+                "body of " + url + " not received in time")), delayNanos, TimeUnit.NANOSECONDS);
+        // The reader closing the stream early cancels through here
+        downstream.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                subscription.request(n);
+            }
+
+            @Override
+            public void cancel() {
+                cancelTimer();
+                subscription.cancel();
+                finish();
+            }
+        });
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> items) {
+        synchronized (this) {
+            if (terminated) {
+                return;
+            }
+            for (ByteBuffer item : items) {
+                received += item.remaining();
+            }
+            if (received <= maxBytes) {
+                downstream.onNext(items);
+                return;
+            }
+        }
+        abort(new FetchException(url, FetchException.Kind.TOO_LARGE,
+                "response of " + url + " exceeds " + maxBytes + " bytes"));
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        cancelTimer();
+        synchronized (this) {
+            if (!terminated) {
+                terminated = true;
+                downstream.onError(throwable);
+            }
+        }
+        finish();
+    }
+
+    @Override
+    public void onComplete() {
+        cancelTimer();
+        synchronized (this) {
+            if (!terminated) {
+                terminated = true;
+                downstream.onComplete();
+            }
+        }
+        finish();
+    }
+
+    private void abort(FetchException reason) {
+        synchronized (this) {
+            if (terminated) {
+                return;
+            }
+            terminated = true;
+            downstream.onError(reason);
+        }
+        cancelTimer();
+        Flow.Subscription s = subscription;
+        if (s != null) {
+            s.cancel();
+        }
+        finish();
+    }
+
+    private void finish() {
+        if (done.compareAndSet(false, true)) {
+            onDone.run();
+        }
+    }
+
+    private void cancelTimer() {
+        ScheduledFuture<?> t = timer;
+        if (t != null) {
+            t.cancel(false);
+        }
+    }
+}
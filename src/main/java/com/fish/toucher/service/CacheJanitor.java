@@ -0,0 +1,68 @@
+package com.fish.toucher.service;
+
+import com.fish.toucher.settings.NovelReaderSettings;
+import com.intellij.openapi.diagnostic.Logger;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the chapter cache within the quota set in settings.
+ * <p>
+ * Runs {@link ChapterCacheManager#trimToQuota} on a single low-priority daemon thread: shortly
+ * after startup, then periodically, and soon after the cache grew by a lot or the quota was
+ * lowered. Requests made while a run is already pending are folded into it.
+ */
+public class CacheJanitor {
+
+    private static final Logger LOG = Logger.getInstance(CacheJanitor.class);
+    private static final CacheJanitor INSTANCE = new CacheJanitor();
+
+    /** Delay of the first run after startup, so it does not compete with project opening. */
+    private static final long INITIAL_DELAY_MS = TimeUnit.MINUTES.toMillis(3);
+    private static final long PERIOD_MS = TimeUnit.MINUTES.toMillis(30);
+    /** Delay of a requested run, so a burst of downloads is trimmed once. */
+    private static final long REQUEST_DELAY_MS = TimeUnit.SECONDS.toMillis(10);
+
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> requested;
+
+    public static CacheJanitor getInstance() {
+        return INSTANCE;
+    }
+
+    private CacheJanitor() {}
+
+    public synchronized void start() {
+        if (scheduler != null) return;
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "CacheJanitor");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::run, INITIAL_DELAY_MS, PERIOD_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Run soon, e.g. because the quota changed. Does nothing before {@link #start}.
+     */
+    public synchronized void requestRun() {
+        if (scheduler == null || (requested != null && !requested.isDone())) return;
+        requested = scheduler.schedule(this::run, REQUEST_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void run() {
+        try {
+            long quotaBytes = NovelReaderSettings.getInstance().getCacheQuotaMb() * 1024L * 1024L;
+            long freed = ChapterCacheManager.getInstance().trimToQuota(quotaBytes);
+            if (freed > 0) {
+                LOG.info("run: freed " + freed / 1024 + "K of chapter cache");
+            }
+        } catch (Exception e) {
+            LOG.error("run: uncaught exception while trimming the cache", e);
+        }
+    }
+}
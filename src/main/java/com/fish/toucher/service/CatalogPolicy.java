@@ -0,0 +1,84 @@
+package com.fish.toucher.service;
+
+import com.fish.toucher.model.BookSource;
+import com.fish.toucher.model.ChapterInfo;
+import com.intellij.openapi.diagnostic.Logger;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * How long a cached chapter list is trusted before it is revalidated.
+ * <p>
+ * A source may set its own TTL (short for sites that update several times a day). A finished book
+ * gets a TTL of a month, long enough never to matter while it is being read, yet short enough that
+ * a book taken for finished by mistake, say by an arc titled "大结局", catches up eventually.
+ */
+final class CatalogPolicy {
+
+    private static final Logger LOG = Logger.getInstance(CatalogPolicy.class);
+
+    static final long DEFAULT_TTL_MS = TimeUnit.HOURS.toMillis(24);
+    static final long FINISHED_TTL_MS = TimeUnit.DAYS.toMillis(30);
+
+    /**
+     * Chapter titles that end a book: "大结局", "全书完", "完本感言", a bracketed "(完)" or
+     * "【完结】", or a title ending in a lone "完结" / "完本".
+     */
+    static final String DEFAULT_FINISHED_PATTERN =
+            "\u5927\u7ed3\u5c40|\u5168\u4e66\u5b8c|\u5168\u6587\u5b8c|\u5168\u4e66\u7ec8"
+                    + "|\u5b8c\u672c\u611f\u8a00|\u5b8c\u7ed3\u611f\u8a00"
+                    + "|[\uff08(\u3010\\[]\\s*(?:\u5b8c|\u5b8c\u7ed3|\u5b8c\u672c|\u7ec8)\\s*[\uff09)\u3011\\]]"
+                    + "|(?:^|\\s)(?:\u5b8c\u7ed3|\u5b8c\u672c)$";
+    /** Chapters at the end of the list that are checked; a note often follows the last chapter. */
+    private static final int FINISHED_TAIL = 3;
+
+    private static final Map<String, Pattern> PATTERNS = new ConcurrentHashMap<>();
+
+    private CatalogPolicy() {}
+
+    /** TTL of a cached chapter list of a book from a source. */
+    static long ttlMs(BookSource source, List<ChapterInfo> chapters) {
+        if (isFinished(source, chapters)) {
+            return FINISHED_TTL_MS;
+        }
+        BookSource.ChapterRule rule = source != null ? source.getChapterRule() : null;
+        return rule != null && rule.getTtlMinutes() > 0
+                ? TimeUnit.MINUTES.toMillis(rule.getTtlMinutes())
+                : DEFAULT_TTL_MS;
+    }
+
+    /** Whether one of the last chapters' titles says the book is complete. */
+    static boolean isFinished(BookSource source, List<ChapterInfo> chapters) {
+        if (chapters == null || chapters.isEmpty()) {
+            return false;
+        }
+        Pattern pattern = finishedPattern(source);
+        for (int i = chapters.size() - 1; i >= Math.max(0, chapters.size() - FINISHED_TAIL); i--) {
+            String name = chapters.get(i).getName();
+            if (name != null && pattern.matcher(name.strip()).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Pattern finishedPattern(BookSource source) {
+        BookSource.ChapterRule rule = source != null ? source.getChapterRule() : null;
+        String regex = rule != null && rule.getFinishedPattern() != null && !rule.getFinishedPattern().isBlank()
+                ? rule.getFinishedPattern()
+                : DEFAULT_FINISHED_PATTERN;
+        return PATTERNS.computeIfAbsent(regex, r -> {
+            try {
+                return Pattern.compile(r);
+            } catch (PatternSyntaxException e) {
+                LOG.warn("Invalid finished pattern '" + r + "', using the default: " + e.getMessage());
+                return Pattern.compile(DEFAULT_FINISHED_PATTERN);
+            }
+        });
+    }
+}
@@ -1,33 +1,93 @@
 package com.fish.toucher.service;
 
+import com.fish.toucher.model.BookSource;
+import com.fish.toucher.model.BookshelfItem;
 import com.fish.toucher.model.ChapterInfo;
+import com.fish.toucher.model.SearchResult;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.reflect.TypeToken;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.LowMemoryWatcher;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ChapterCacheManager {
 
     private static final Logger LOG = Logger.getInstance(ChapterCacheManager.class);
     private static final ChapterCacheManager INSTANCE = new ChapterCacheManager();
 
-    private static final long CHAPTER_LIST_TTL_MS = TimeUnit.HOURS.toMillis(24);
+    static final String CHAPTER_LIST_FILE = "chapters.json";
+    private static final String CATALOG_META_FILE = "chapters.meta.json";
+    private static final long SEARCH_PAGE_TTL_MS = TimeUnit.MINUTES.toMillis(10);
     private static final Type CHAPTER_LIST_TYPE = new TypeToken<List<ChapterInfo>>() {}.getType();
+    /** Budget of the in-memory tier: a few hundred chapters, about 8 MB of UTF-16 text. */
+    private static final long MEMORY_TIER_CHARS = 4_000_000;
+    /** Books whose content files are kept open while not in use; each holds two file handles. */
+    private static final int MAX_OPEN_BOOKS = 8;
+    private static final String TRASH_DIR = ".trash";
+    /** Cached search pages are only worth their validators for a while after they expire. */
+    private static final long SEARCH_PAGE_RETENTION_MS = TimeUnit.DAYS.toMillis(1);
+    /** Chapters written since the last trim after which the janitor is asked to check the quota. */
+    private static final long TRIM_CHECK_BYTES = 16L << 20;
+    /** Chapters around the reading position that trimming leaves alone. */
+    private static final int KEEP_BEHIND = 3;
+    private static final int KEEP_AHEAD = 30;
+    /** Each chapter read counts as this much more recent access when ranking books, up to a cap. */
+    private static final long READ_BONUS_MS = TimeUnit.HOURS.toMillis(1);
+    private static final int MAX_READ_BONUS = 72;
 
     private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
     private final Path cacheDir;
+    private final ChapterMemoryCache memory = new ChapterMemoryCache(MEMORY_TIER_CHARS);
+    /**
+     * Open book content by book directory, least recently used first. Content in use (see
+     * {@link #acquireBook}) stays in the map, so it is never closed under its users.
+     */
+    private final LinkedHashMap<Path, BookContent> openBooks = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, BookContent> eldest) {
+            closeIdleBooks();
+            return false;
+        }
+    };
+    /** Manifests of the books used since startup, by book directory; loaded once, saved lazily. */
+    private final Map<Path, BookManifest> manifests = new ConcurrentHashMap<>();
+    /** Content key of every catalog index, by book directory; rebuilt when the catalog is rewritten. */
+    private final Map<Path, ChapterKeys> catalogKeys = new ConcurrentHashMap<>();
+    private final AtomicLong bytesSinceTrim = new AtomicLong();
+    // Held so the watcher is not garbage collected; the IDE only keeps weak references to it
+    private final LowMemoryWatcher lowMemoryWatcher;
 
     private ChapterCacheManager() {
         cacheDir = Paths.get(System.getProperty("user.home"), ".config", "fish-toucher", "cache");
@@ -36,80 +96,844 @@ public class ChapterCacheManager {
         } catch (IOException e) {
             LOG.error("Failed to create cache directory: " + cacheDir, e);
         }
+        lowMemoryWatcher = LowMemoryWatcher.register(() -> {
+            LOG.info("Low memory, dropping in-memory chapter cache: " + memory.describe());
+            memory.clear();
+        });
     }
 
     public static ChapterCacheManager getInstance() {
         return INSTANCE;
     }
 
-    public List<ChapterInfo> getCachedChapterList(String bookUrl) {
-        Path bookDir = getBookCacheDir(bookUrl);
-        Path file = bookDir.resolve("chapters.json");
+    /**
+     * Get the cached chapter list whatever its age, or null if there is none. A list past the TTL of
+     * its source (see {@link CatalogPolicy}) is returned marked stale: show it, and revalidate it in
+     * the background via {@link OnlineBookFetcher#refreshChapterList}.
+     */
+    public CachedChapterList getCachedChapterList(String bookUrl, BookSource source) {
+        Path file = getBookCacheDir(bookUrl).resolve(CHAPTER_LIST_FILE);
         if (!Files.exists(file)) {
             return null;
         }
-        try {
-            long lastModified = Files.getLastModifiedTime(file).toMillis();
-            if (System.currentTimeMillis() - lastModified > CHAPTER_LIST_TTL_MS) {
-                LOG.info("Chapter list cache expired for: " + bookUrl);
-                return null;
-            }
-            String json = Files.readString(file, StandardCharsets.UTF_8);
-            return gson.fromJson(json, CHAPTER_LIST_TYPE);
-        } catch (Exception e) {
-            LOG.warn("Failed to read cached chapter list", e);
+        List<ChapterInfo> chapters = readChapterList(file);
+        if (chapters == null) {
             return null;
         }
+        boolean finished = CatalogPolicy.isFinished(source, chapters);
+        boolean stale = isExpired(file, CatalogPolicy.ttlMs(source, chapters));
+        if (stale) {
+            LOG.info("Chapter list cache expired for: " + bookUrl);
+        }
+        return new CachedChapterList(chapters, stale, finished);
     }
 
     public void cacheChapterList(String bookUrl, List<ChapterInfo> chapters) {
+        cacheChapterList(bookUrl, chapters, null, null);
+    }
+
+    /**
+     * Cache a chapter list together with the validators of the response it was parsed from.
+     * @param rulesTag the {@link CompiledSource#rulesTag() rules} the list was parsed with;
+     *                 the validators are only offered again under the same rules
+     */
+    public void cacheChapterList(String bookUrl, List<ChapterInfo> chapters, HttpValidators validators, String rulesTag) {
         Path bookDir = getBookCacheDir(bookUrl);
         try {
             Files.createDirectories(bookDir);
             String json = gson.toJson(chapters, CHAPTER_LIST_TYPE);
-            Files.writeString(bookDir.resolve("chapters.json"), json, StandardCharsets.UTF_8);
+            Files.writeString(bookDir.resolve(CHAPTER_LIST_FILE), json, StandardCharsets.UTF_8);
+            writeCatalogMeta(bookDir.resolve(CATALOG_META_FILE), validators, rulesTag);
         } catch (IOException e) {
             LOG.error("Failed to cache chapter list", e);
+            return;
+        }
+        catalogChanged(bookDir, chapters);
+    }
+
+    /**
+     * Get the cached chapter list regardless of its age, or null if there is none.
+     * Used as the baseline when an expired list is refreshed incrementally.
+     */
+    public List<ChapterInfo> getStaleChapterList(String bookUrl) {
+        Path file = getBookCacheDir(bookUrl).resolve(CHAPTER_LIST_FILE);
+        return Files.exists(file) ? readChapterList(file) : null;
+    }
+
+    /**
+     * Time since the cached chapter list was last fetched or revalidated, or Long.MAX_VALUE if there is none.
+     */
+    public long getChapterListAgeMs(String bookUrl) {
+        Path file = getBookCacheDir(bookUrl).resolve(CHAPTER_LIST_FILE);
+        try {
+            return System.currentTimeMillis() - Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return Long.MAX_VALUE;
         }
     }
 
-    public String getCachedContent(String bookUrl, int chapterIndex) {
+    /**
+     * Store the result of a refresh. An append-only change only writes the new tail of chapters.json;
+     * otherwise the list is rewritten. Cached content is keyed by chapter URL, so it stays valid
+     * either way; only the index of each key changes.
+     */
+    public void applyChapterListDiff(String bookUrl, ChapterListDiff diff, HttpValidators validators, String rulesTag) {
         Path bookDir = getBookCacheDir(bookUrl);
-        Path file = bookDir.resolve(chapterIndex + ".txt");
+        Path file = bookDir.resolve(CHAPTER_LIST_FILE);
+        if (diff.isAppendOnly() && diff.getPreviousSize() > 0 && Files.exists(file)) {
+            try {
+                if (!diff.getAdded().isEmpty()) {
+                    appendToJsonArray(file, diff.getAdded());
+                    catalogChanged(bookDir, diff.getChapters());
+                } else {
+                    touch(file);
+                }
+                writeCatalogMeta(bookDir.resolve(CATALOG_META_FILE), validators, rulesTag);
+                return;
+            } catch (IOException e) {
+                LOG.warn("Failed to append to cached chapter list, rewriting it", e);
+            }
+        }
+        cacheChapterList(bookUrl, diff.getChapters(), validators, rulesTag);
+    }
+
+    /**
+     * Validators of the cached chapter list (expired or not), or null if there are none or the list
+     * was parsed with other rules. A 304 would then keep serving what the old rules made of the page.
+     */
+    public HttpValidators getChapterListValidators(String bookUrl, String rulesTag) {
+        Path bookDir = getBookCacheDir(bookUrl);
+        if (!Files.exists(bookDir.resolve(CHAPTER_LIST_FILE))) {
+            return null;
+        }
+        CatalogMeta meta = readCatalogMeta(bookDir.resolve(CATALOG_META_FILE));
+        return meta != null && rulesTag != null && rulesTag.equals(meta.rules) ? meta.validators : null;
+    }
+
+    /**
+     * Mark the cached chapter list as fresh again after a 304 and return it.
+     * @return the cached list, or null if it is gone
+     */
+    public List<ChapterInfo> touchChapterList(String bookUrl) {
+        Path file = getBookCacheDir(bookUrl).resolve(CHAPTER_LIST_FILE);
+        return touch(file) ? readChapterList(file) : null;
+    }
+
+    /**
+     * Get cached search results for a search URL, or null if there are none or they are older than the TTL.
+     * <p>
+     * Search pages are cached per source and rules: the search methods take the URL qualified by
+     * {@link CompiledSource#searchCacheKey(String)}, so results parsed before a rule edit are never
+     * served or revalidated afterwards.
+     */
+    public List<SearchResult> getCachedSearchResults(String searchKey) {
+        Path file = getSearchCacheFile(searchKey);
+        if (!Files.exists(file) || isExpired(file, SEARCH_PAGE_TTL_MS)) {
+            return null;
+        }
+        SearchPageEntry entry = readSearchPage(file);
+        return entry != null ? entry.results : null;
+    }
+
+    public void cacheSearchResults(String searchKey, List<SearchResult> results, HttpValidators validators) {
+        Path file = getSearchCacheFile(searchKey);
+        try {
+            Files.createDirectories(file.getParent());
+            SearchPageEntry entry = new SearchPageEntry();
+            entry.validators = validators;
+            entry.results = results;
+            Files.writeString(file, gson.toJson(entry), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            LOG.warn("Failed to cache search results", e);
+        }
+    }
+
+    /**
+     * Validators of the cached search page (expired or not), or null if there are none.
+     */
+    public HttpValidators getSearchValidators(String searchKey) {
+        Path file = getSearchCacheFile(searchKey);
         if (!Files.exists(file)) {
             return null;
         }
+        SearchPageEntry entry = readSearchPage(file);
+        return entry != null ? entry.validators : null;
+    }
+
+    /**
+     * Mark the cached search page as fresh again after a 304 and return its results.
+     * @return the cached results, or null if they are gone
+     */
+    public List<SearchResult> touchSearchResults(String searchKey) {
+        Path file = getSearchCacheFile(searchKey);
+        if (!touch(file)) {
+            return null;
+        }
+        SearchPageEntry entry = readSearchPage(file);
+        return entry != null ? entry.results : null;
+    }
+
+    /**
+     * Lines of a cached chapter, or null if it is not cached. Recently read chapters are served
+     * from memory, already split; the rest are read from disk and kept in memory from then on.
+     * The returned list is unmodifiable.
+     * <p>
+     * Chapters are identified by their URL, so a catalog renumbered meanwhile does not matter;
+     * the index of the chapter is only used if it has no URL. The same holds for the other
+     * chapter methods.
+     */
+    public List<String> getCachedLines(String bookUrl, ChapterInfo chapter) {
+        recordRead(bookUrl, chapter);
+        ChapterMemoryCache.Key key = new ChapterMemoryCache.Key(bookUrl, ChapterKeys.keyOf(chapter));
+        List<String> lines = memory.get(key);
+        if (lines != null) {
+            return lines;
+        }
+        lines = readChapter(bookUrl, key.chapterKey());
+        if (lines == null) {
+            return null;
+        }
+        memory.put(key, lines);
+        return lines;
+    }
+
+    /**
+     * Cache the lines of a chapter on disk and in memory. They are stored packed, so reading them
+     * back needs no split.
+     */
+    public void cacheLines(String bookUrl, ChapterInfo chapter, List<String> lines) {
+        long key = ChapterKeys.keyOf(chapter);
+        storeChapter(bookUrl, key, PackedLines.pack(lines));
+        memory.put(new ChapterMemoryCache.Key(bookUrl, key), lines);
+    }
+
+    private List<String> readChapter(String bookUrl, long key) {
+        Path bookDir = getBookCacheDir(bookUrl);
         try {
-            return Files.readString(file, StandardCharsets.UTF_8);
+            BookManifest manifest = getManifest(bookDir);
+            ChapterKeys keys = getChapterKeys(bookDir);
+            int catalogIndex = keys.indexOf(key);
+            // The manifest answers for the chapters of the cached catalog without a disk read
+            if (catalogIndex >= 0 && !manifest.contains(catalogIndex)) {
+                return null;
+            }
+            BookContent content = acquireBook(bookDir, false);
+            if (content == null) {
+                return null;
+            }
+            try {
+                List<String> lines = content.read(key);
+                if (lines == null && catalogIndex >= 0) {
+                    // The store dropped a corrupt entry
+                    manifest.sync(content.store, keys);
+                }
+                return lines;
+            } finally {
+                releaseBook(content);
+            }
         } catch (IOException e) {
-            LOG.warn("Failed to read cached content for chapter " + chapterIndex, e);
+            LOG.warn("Failed to read cached chapter " + Long.toHexString(key) + " of " + bookUrl, e);
             return null;
         }
     }
 
-    public void cacheContent(String bookUrl, int chapterIndex, String content) {
+    /**
+     * @param raw the chapter as UTF-8 text or packed lines
+     */
+    private void storeChapter(String bookUrl, long key, byte[] raw) {
+        memory.remove(new ChapterMemoryCache.Key(bookUrl, key));
         Path bookDir = getBookCacheDir(bookUrl);
         try {
-            Files.createDirectories(bookDir);
-            Files.writeString(bookDir.resolve(chapterIndex + ".txt"), content, StandardCharsets.UTF_8);
+            BookManifest manifest = getManifest(bookDir);
+            ChapterKeys keys = getChapterKeys(bookDir);
+            BookContent book = acquireBook(bookDir, true);
+            try {
+                // Under the store's lock, so a manifest saved meanwhile never sees the chapter in
+                // the index but not in its chapter set
+                synchronized (book.store) {
+                    book.write(key, raw);
+                    manifest.recordWrite(bookUrl, keys.indexOf(key), book.store);
+                }
+            } finally {
+                releaseBook(book);
+            }
+        } catch (IOException e) {
+            LOG.error("Failed to cache chapter " + Long.toHexString(key) + " of " + bookUrl, e);
+            return;
+        }
+        if (bytesSinceTrim.addAndGet(raw.length) > TRIM_CHECK_BYTES) {
+            bytesSinceTrim.set(0);
+            CacheJanitor.getInstance().requestRun();
+        }
+    }
+
+    /**
+     * Number of chapters of a book whose content is cached. Reads the book's manifest on first use.
+     */
+    public int getCachedChapterCount(String bookUrl) {
+        try {
+            return getManifest(getBookCacheDir(bookUrl)).count();
+        } catch (IOException e) {
+            LOG.warn("Failed to read cache manifest of " + bookUrl, e);
+            return 0;
+        }
+    }
+
+    /**
+     * Totals over all cached books. Reads the manifest of every book not used yet, so call it
+     * off the EDT.
+     */
+    public CacheStats getCacheStats() {
+        CacheStats stats = new CacheStats();
+        try (DirectoryStream<Path> books = Files.newDirectoryStream(cacheDir, Files::isDirectory)) {
+            for (Path bookDir : books) {
+                if (!Files.exists(bookDir.resolve(BookSegmentStore.INDEX_FILE))) {
+                    continue;
+                }
+                Path segment = bookDir.resolve(BookSegmentStore.SEGMENT_FILE);
+                stats.add(getManifest(bookDir), Files.exists(segment) ? Files.size(segment) : 0);
+            }
         } catch (IOException e) {
-            LOG.error("Failed to cache content for chapter " + chapterIndex, e);
+            LOG.warn("Failed to collect cache statistics", e);
         }
+        return stats;
     }
 
+    /**
+     * Delete everything cached for a book. Does file I/O proportional to the cache size, so call
+     * it off the EDT.
+     */
     public void clearCache(String bookUrl) {
+        memory.removeBook(bookUrl);
+        try {
+            if (deleteBookDir(getBookCacheDir(bookUrl)) > 0) {
+                LOG.info("Cleared cache for: " + bookUrl);
+            }
+        } catch (IOException e) {
+            LOG.error("Failed to clear cache for: " + bookUrl, e);
+        }
+    }
+
+    /**
+     * Bring the cache under a quota, least valuable content first.
+     * <p>
+     * Books are ranked by last access, with a bonus per chapter read, so a book read every day
+     * outlives one opened once last night. Going up that ranking, trimming deletes:
+     * <ol>
+     *     <li>whole books that are not on the bookshelf;</li>
+     *     <li>chapters the catalog no longer lists, then chapters away from each book's reading
+     *     position, those already read and farthest behind first, then those farthest ahead;</li>
+     *     <li>the rest of every book but the one read last.</li>
+     * </ol>
+     * The chapters around the reading position of the book read last are never deleted. Stops
+     * a tenth under the quota, so the cache does not hover at it and trim on every write.
+     * Expired search pages are deleted regardless of the quota, and changed manifests are saved.
+     *
+     * @param quotaBytes total size allowed on disk, or 0 for no limit
+     * @return bytes freed
+     */
+    synchronized long trimToQuota(long quotaBytes) {
+        long freed = 0;
+        try {
+            emptyTrash();
+            freed += deleteExpiredSearchPages();
+            List<BookUsage> books = measureBooks();
+            long usage = searchCacheBytes();
+            for (BookUsage book : books) {
+                usage += book.bytes;
+            }
+            if (quotaBytes > 0 && usage > quotaBytes) {
+                freed += trim(books, usage, quotaBytes - quotaBytes / 10);
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to trim chapter cache", e);
+        } finally {
+            bytesSinceTrim.set(0);
+            saveManifests();
+        }
+        return freed;
+    }
+
+    private long trim(List<BookUsage> books, long usage, long target) throws IOException {
+        long start = usage;
+        books.sort(Comparator.comparingLong(BookUsage::value));
+        BookUsage current = books.stream().max(Comparator.comparingLong(BookUsage::lastAccess)).orElse(null);
+        Map<String, BookshelfItem> shelf = new HashMap<>();
+        for (BookshelfItem item : BookshelfManager.getInstance().getBooks()) {
+            if (item.getBookUrl() != null) {
+                shelf.put(md5(item.getBookUrl()), item);
+            }
+        }
+
+        int deletedBooks = 0;
+        for (BookUsage book : books) {
+            if (usage <= target) break;
+            if (book != current && !shelf.containsKey(book.name)) {
+                usage -= deleteBookDir(book.dir);
+                deletedBooks++;
+            }
+        }
+        int evicted = 0;
+        for (BookUsage book : books) {
+            if (usage <= target || !Files.isDirectory(book.dir)) continue;
+            int position = readingPosition(book, shelf.get(book.name));
+            if (book == current && position < 0) continue;
+            long[] result = evictChapters(book, position, usage - target);
+            usage -= result[0];
+            evicted += (int) result[1];
+        }
+        for (BookUsage book : books) {
+            if (usage <= target) break;
+            if (book != current && Files.isDirectory(book.dir)) {
+                long[] result = evictChapters(book, -1, usage - target);
+                usage -= result[0];
+                evicted += (int) result[1];
+            }
+        }
+        LOG.info("Trimmed chapter cache from " + start / 1024 + "K to " + usage / 1024 + "K: "
+                + deletedBooks + " book(s) and " + evicted + " chapter(s) deleted");
+        return start - usage;
+    }
+
+    /**
+     * Delete chapters of a book, least valuable first, until about {@code needed} bytes are freed.
+     *
+     * @param position reading position whose window is kept, or -1 to consider every chapter
+     * @return bytes freed and chapters deleted
+     */
+    private long[] evictChapters(BookUsage book, int position, long needed) throws IOException {
+        BookManifest manifest = getManifest(book.dir);
+        BookContent content = acquireBook(book.dir, false);
+        if (content == null) {
+            return new long[]{0, 0};
+        }
+        try {
+            return evictChapters(book.dir, manifest, content, position, needed);
+        } finally {
+            releaseBook(content);
+        }
+    }
+
+    private long[] evictChapters(Path bookDir, BookManifest manifest, BookContent content, int position, long needed)
+            throws IOException {
+        ChapterKeys keys = getChapterKeys(bookDir);
+        // Rank by how unlikely a chapter is to be opened: gone from the catalog, then already read
+        List<long[]> candidates = new ArrayList<>();
+        for (long key : content.store.keys()) {
+            int chapterIndex = keys.indexOf(key);
+            long rank;
+            if (chapterIndex < 0) {
+                rank = Long.MAX_VALUE;
+            } else if (position < 0) {
+                rank = 0;
+            } else if (chapterIndex >= position - KEEP_BEHIND && chapterIndex <= position + KEEP_AHEAD) {
+                continue;
+            } else {
+                rank = chapterIndex < position ? (long) (position - chapterIndex) * 4 : chapterIndex - position;
+            }
+            candidates.add(new long[]{key, rank});
+        }
+        candidates.sort(Comparator.comparingLong((long[] c) -> c[1]).reversed());
+        List<Long> victims = new ArrayList<>();
+        long planned = 0;
+        String bookUrl = manifest.getBookUrl();
+        for (long[] candidate : candidates) {
+            if (planned >= needed) break;
+            victims.add(candidate[0]);
+            planned += Math.max(0, content.store.storedLength(candidate[0]));
+            if (bookUrl != null) {
+                memory.remove(new ChapterMemoryCache.Key(bookUrl, candidate[0]));
+            }
+        }
+        if (victims.isEmpty()) {
+            return new long[]{0, 0};
+        }
+        long freed = content.store.evict(victims);
+        manifest.sync(content.store, keys);
+        return new long[]{freed, victims.size()};
+    }
+
+    /** Chapter the reader is at: the bookshelf's progress, else the chapter read last, else -1. */
+    private static int readingPosition(BookUsage book, BookshelfItem shelfItem) {
+        if (shelfItem != null) {
+            return shelfItem.getLastReadChapter();
+        }
+        return book.manifest.getLastChapter();
+    }
+
+    private void recordRead(String bookUrl, ChapterInfo chapter) {
         Path bookDir = getBookCacheDir(bookUrl);
-        if (!Files.isDirectory(bookDir)) {
-            return;
+        int catalogIndex = getChapterKeys(bookDir).indexOf(ChapterKeys.keyOf(chapter));
+        try {
+            getManifest(bookDir).recordRead(bookUrl, catalogIndex >= 0 ? catalogIndex : chapter.getIndex());
+        } catch (IOException e) {
+            LOG.warn("Failed to read cache manifest of " + bookUrl, e);
+        }
+    }
+
+    /**
+     * Every book directory with its size on disk and the access record of its manifest. Manifests
+     * not loaded yet are read as saved, without opening the book to check them: only their
+     * access record is used for ranking.
+     */
+    private List<BookUsage> measureBooks() throws IOException {
+        List<BookUsage> books = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(cacheDir, Files::isDirectory)) {
+            for (Path dir : stream) {
+                String name = dir.getFileName().toString();
+                if (name.equals("search") || name.equals(TRASH_DIR)) {
+                    continue;
+                }
+                long bytes = 0;
+                long modified = 0;
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                    for (Path file : files) {
+                        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+                        bytes += attrs.size();
+                        modified = Math.max(modified, attrs.lastModifiedTime().toMillis());
+                    }
+                } catch (NoSuchFileException e) {
+                    continue;
+                }
+                BookManifest manifest = manifests.get(dir);
+                books.add(new BookUsage(dir, name, bytes, modified,
+                        manifest != null ? manifest : BookManifest.read(dir, gson)));
+            }
+        }
+        return books;
+    }
+
+    private long searchCacheBytes() throws IOException {
+        Path searchDir = cacheDir.resolve("search");
+        if (!Files.isDirectory(searchDir)) {
+            return 0;
+        }
+        long bytes = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(searchDir)) {
+            for (Path file : stream) {
+                bytes += Files.size(file);
+            }
         }
-        try (DirectoryStream<Path> stream = Files.newDirectoryStream(bookDir)) {
+        return bytes;
+    }
+
+    private long deleteExpiredSearchPages() throws IOException {
+        Path searchDir = cacheDir.resolve("search");
+        if (!Files.isDirectory(searchDir)) {
+            return 0;
+        }
+        long freed = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(searchDir, "*.json")) {
             for (Path file : stream) {
+                if (isExpired(file, SEARCH_PAGE_RETENTION_MS)) {
+                    long size = Files.size(file);
+                    Files.deleteIfExists(file);
+                    freed += size;
+                }
+            }
+        }
+        return freed;
+    }
+
+    /**
+     * Delete a book's directory. It is first renamed into the trash, under the lock that guards
+     * opening books, so no reader or writer can reopen it half deleted; the files are then
+     * deleted without holding anything.
+     *
+     * @return bytes deleted, 0 if there was no directory
+     */
+    private long deleteBookDir(Path bookDir) throws IOException {
+        Path trashed = cacheDir.resolve(TRASH_DIR).resolve(bookDir.getFileName() + "-" + System.nanoTime());
+        synchronized (openBooks) {
+            // Let the book's readers and writers finish; closing the store under them fails them
+            BookContent open;
+            while ((open = openBooks.get(bookDir)) != null && open.users > 0) {
+                try {
+                    openBooks.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while deleting " + bookDir);
+                }
+            }
+            closeQuietly(bookDir, openBooks.remove(bookDir));
+            if (!Files.isDirectory(bookDir)) {
+                return 0;
+            }
+            Files.createDirectories(trashed.getParent());
+            try {
+                Files.move(bookDir, trashed, StandardCopyOption.ATOMIC_MOVE);
+            } catch (NoSuchFileException e) {
+                return 0;
+            }
+        }
+        manifests.remove(bookDir);
+        catalogKeys.remove(bookDir);
+        return deleteTree(trashed);
+    }
+
+    /** Finish deletions interrupted by a crash or a file the OS held open. */
+    private void emptyTrash() throws IOException {
+        Path trash = cacheDir.resolve(TRASH_DIR);
+        if (Files.isDirectory(trash)) {
+            deleteTree(trash);
+        }
+    }
+
+    /** Delete a directory tree, returning the bytes of the files deleted. */
+    private static long deleteTree(Path root) throws IOException {
+        long[] bytes = {0};
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
                 Files.deleteIfExists(file);
+                bytes[0] += attrs.size();
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                if (exc != null) {
+                    throw exc;
+                }
+                Files.deleteIfExists(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return bytes[0];
+    }
+
+    /**
+     * The manifest of a book, loaded on first use; rebuilt from the segment index if it is
+     * missing or out of date.
+     */
+    private BookManifest getManifest(Path bookDir) throws IOException {
+        BookManifest manifest = manifests.get(bookDir);
+        if (manifest != null) {
+            return manifest;
+        }
+        synchronized (openBooks) {
+            manifest = manifests.get(bookDir);
+            if (manifest == null) {
+                manifest = BookManifest.read(bookDir, gson);
+                if (!manifest.isCurrent(bookDir)) {
+                    LOG.info("Cache manifest of " + bookDir + " out of date, rebuilding it");
+                    BookContent content = acquireBook(bookDir, false);
+                    if (content != null) {
+                        try {
+                            manifest.sync(content.store, getChapterKeys(bookDir));
+                        } finally {
+                            releaseBook(content);
+                        }
+                    }
+                }
+                manifests.put(bookDir, manifest);
+            }
+            return manifest;
+        }
+    }
+
+    /** The content keys of a book's cached catalog, empty if there is none. */
+    private ChapterKeys getChapterKeys(Path bookDir) {
+        ChapterKeys keys = catalogKeys.get(bookDir);
+        if (keys == null) {
+            Path file = bookDir.resolve(CHAPTER_LIST_FILE);
+            List<ChapterInfo> chapters = Files.exists(file) ? readChapterList(file) : null;
+            keys = chapters != null ? ChapterKeys.of(chapters) : ChapterKeys.EMPTY;
+            catalogKeys.putIfAbsent(bookDir, keys);
+        }
+        return keys;
+    }
+
+    /**
+     * Point the book's indices at the content keys of a new catalog. Content stays where it is;
+     * the manifest, which is by index, is rebuilt if it was loaded.
+     */
+    private void catalogChanged(Path bookDir, List<ChapterInfo> chapters) {
+        ChapterKeys keys = ChapterKeys.of(chapters);
+        catalogKeys.put(bookDir, keys);
+        BookManifest manifest = manifests.get(bookDir);
+        if (manifest == null) {
+            // Its validator no longer matches the catalog; it is rebuilt when first needed
+            return;
+        }
+        try {
+            BookContent content = acquireBook(bookDir, false);
+            if (content != null) {
+                try {
+                    manifest.sync(content.store, keys);
+                } finally {
+                    releaseBook(content);
+                }
             }
-            Files.deleteIfExists(bookDir);
-            LOG.info("Cleared cache for: " + bookUrl);
         } catch (IOException e) {
-            LOG.error("Failed to clear cache for: " + bookUrl, e);
+            LOG.warn("Failed to update cache manifest for the new chapter list: " + bookDir, e);
+            manifests.remove(bookDir);
+        }
+    }
+
+    /** Write the manifests that changed since they were last saved. */
+    private void saveManifests() {
+        for (Map.Entry<Path, BookManifest> entry : manifests.entrySet()) {
+            BookContent open;
+            synchronized (openBooks) {
+                open = openBooks.get(entry.getKey());
+            }
+            saveManifest(entry.getKey(), entry.getValue(), open);
+        }
+    }
+
+    private void saveManifest(Path bookDir, BookManifest manifest, BookContent open) {
+        try {
+            if (open != null) {
+                synchronized (open.store) {
+                    manifest.save(bookDir, gson);
+                }
+            } else {
+                manifest.save(bookDir, gson);
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to save cache manifest: " + bookDir, e);
+        }
+    }
+
+    /**
+     * Append elements to a JSON array file in place: the closing bracket is overwritten by the new
+     * elements, so the existing chapters are neither re-read nor re-written.
+     */
+    private void appendToJsonArray(Path file, List<ChapterInfo> added) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long end = channel.size();
+            int tail = (int) Math.min(end, 64);
+            ByteBuffer buf = ByteBuffer.allocate(tail);
+            channel.read(buf, end - tail);
+            byte[] bytes = buf.array();
+            int close = -1;
+            int lastToken = -1;
+            for (int i = tail - 1; i >= 0; i--) {
+                if (Character.isWhitespace(bytes[i])) {
+                    continue;
+                }
+                if (close < 0) {
+                    if (bytes[i] != ']') {
+                        throw new IOException("Not a JSON array: " + file);
+                    }
+                    close = i;
+                } else {
+                    lastToken = i;
+                    break;
+                }
+            }
+            if (close < 0) {
+                throw new IOException("Not a JSON array: " + file);
+            }
+            boolean empty = lastToken >= 0 && bytes[lastToken] == '[';
+
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < added.size(); i++) {
+                sb.append(empty && i == 0 ? "\n  " : ",\n  ");
+                sb.append(gson.toJson(added.get(i)).replace("\n", "\n  "));
+            }
+            sb.append("\n]");
+            long position = end - tail + close;
+            channel.truncate(position);
+            channel.write(ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8)), position);
+        }
+    }
+
+    /**
+     * The content store of a book, opened on first use, for the caller to use until it hands it
+     * back with {@link #releaseBook}; it is not closed meanwhile. Chapters cached by older versions
+     * as one {@code <index>.txt} file each are moved into the store, keyed by URL through the cached
+     * catalog, when it is opened; what the catalog cannot place is dropped.
+     *
+     * @param create whether to create the book directory; if false and there is none, returns null
+     */
+    private BookContent acquireBook(Path bookDir, boolean create) throws IOException {
+        synchronized (openBooks) {
+            BookContent content = openBooks.get(bookDir);
+            if (content != null) {
+                content.users++;
+                return content;
+            }
+            if (create) {
+                Files.createDirectories(bookDir);
+            } else if (!Files.isDirectory(bookDir)) {
+                return null;
+            }
+            content = new BookContent(BookSegmentStore.open(bookDir), ChapterCompressor.open(bookDir));
+            ChapterKeys keys = getChapterKeys(bookDir);
+            BookManifest manifest = manifests.get(bookDir);
+            if (migrateChapterFiles(bookDir, content, keys) && manifest != null) {
+                manifest.sync(content.store, keys);
+            }
+            content.users++;
+            openBooks.put(bookDir, content);
+            return content;
+        }
+    }
+
+    /** Hand back a book acquired with {@link #acquireBook}. */
+    private void releaseBook(BookContent content) {
+        synchronized (openBooks) {
+            if (--content.users == 0) {
+                closeIdleBooks();
+                openBooks.notifyAll();
+            }
+        }
+    }
+
+    /** Close the least recently used books not in use, down to {@link #MAX_OPEN_BOOKS}. */
+    private void closeIdleBooks() {
+        Iterator<Map.Entry<Path, BookContent>> it = openBooks.entrySet().iterator();
+        while (openBooks.size() > MAX_OPEN_BOOKS && it.hasNext()) {
+            Map.Entry<Path, BookContent> entry = it.next();
+            if (entry.getValue().users == 0) {
+                it.remove();
+                closeQuietly(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * @return whether any chapter was moved
+     */
+    private static boolean migrateChapterFiles(Path bookDir, BookContent content, ChapterKeys keys) throws IOException {
+        int migrated = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(bookDir, "*.txt")) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                int chapterIndex;
+                try {
+                    chapterIndex = Integer.parseInt(name.substring(0, name.length() - ".txt".length()));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                if (keys.hasIndex(chapterIndex) && !content.store.contains(keys.keyAt(chapterIndex))) {
+                    content.write(keys.keyAt(chapterIndex), Files.readAllBytes(file));
+                }
+                Files.delete(file);
+                migrated++;
+            }
+        }
+        if (migrated > 0) {
+            LOG.info("Moved " + migrated + " cached chapter file(s) into the segment of " + bookDir);
+        }
+        return migrated > 0;
+    }
+
+    /** Close a book's store, saving its manifest first while the two still agree. */
+    private void closeQuietly(Path bookDir, BookContent content) {
+        if (content == null) {
+            return;
+        }
+        BookManifest manifest = manifests.get(bookDir);
+        if (manifest != null) {
+            saveManifest(bookDir, manifest, content);
+        }
+        try {
+            content.store.close();
+        } catch (IOException e) {
+            LOG.warn("Failed to close chapter segment", e);
         }
     }
 
@@ -117,6 +941,210 @@ public class ChapterCacheManager {
         return cacheDir.resolve(md5(bookUrl));
     }
 
+    private Path getSearchCacheFile(String searchKey) {
+        return cacheDir.resolve("search").resolve(md5(searchKey) + ".json");
+    }
+
+    private List<ChapterInfo> readChapterList(Path file) {
+        try {
+            String json = Files.readString(file, StandardCharsets.UTF_8);
+            return gson.fromJson(json, CHAPTER_LIST_TYPE);
+        } catch (Exception e) {
+            LOG.warn("Failed to read cached chapter list", e);
+            return null;
+        }
+    }
+
+    private SearchPageEntry readSearchPage(Path file) {
+        try {
+            return gson.fromJson(Files.readString(file, StandardCharsets.UTF_8), SearchPageEntry.class);
+        } catch (Exception e) {
+            LOG.warn("Failed to read cached search page", e);
+            return null;
+        }
+    }
+
+    private CatalogMeta readCatalogMeta(Path file) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            return gson.fromJson(Files.readString(file, StandardCharsets.UTF_8), CatalogMeta.class);
+        } catch (Exception e) {
+            LOG.warn("Failed to read cache validators: " + file, e);
+            return null;
+        }
+    }
+
+    private void writeCatalogMeta(Path file, HttpValidators validators, String rulesTag) throws IOException {
+        if (validators == null || validators.isEmpty() || rulesTag == null) {
+            Files.deleteIfExists(file);
+        } else {
+            CatalogMeta meta = new CatalogMeta();
+            meta.rules = rulesTag;
+            meta.validators = validators;
+            Files.writeString(file, gson.toJson(meta), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static boolean isExpired(Path file, long ttlMs) {
+        try {
+            long lastModified = Files.getLastModifiedTime(file).toMillis();
+            return System.currentTimeMillis() - lastModified > ttlMs;
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /** Reset the TTL of a cache file; the file's mtime is its fetch time. */
+    private static boolean touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * The cached chapters of one book: the segment holding them and the compressor they are
+     * stored with. Once enough chapters are cached, the first of them train the book's dictionary.
+     * A chapter is stored as {@link PackedLines}, or as UTF-8 text if it was moved in from an
+     * older version's {@code .txt} file.
+     */
+    private static final class BookContent {
+        final BookSegmentStore store;
+        final ChapterCompressor compressor;
+        /** Callers between {@link #acquireBook} and {@link #releaseBook}; guarded by openBooks. */
+        int users;
+
+        BookContent(BookSegmentStore store, ChapterCompressor compressor) {
+            this.store = store;
+            this.compressor = compressor;
+        }
+
+        /** The lines of a chapter, or null; the list is unmodifiable. */
+        List<String> read(long key) throws IOException {
+            byte[] data = store.read(key);
+            if (data == null) {
+                return null;
+            }
+            byte[] raw = compressor.decode(data);
+            if (PackedLines.isPacked(raw)) {
+                try {
+                    return PackedLines.wrap(raw);
+                } catch (IllegalArgumentException e) {
+                    LOG.warn("Corrupt cached chapter " + Long.toHexString(key) + ", dropping it", e);
+                    store.remove(key);
+                    return null;
+                }
+            }
+            return Collections.unmodifiableList(Arrays.asList(new String(raw, StandardCharsets.UTF_8).split("\n")));
+        }
+
+        void write(long key, byte[] raw) throws IOException {
+            store.write(key, compressor.encode(raw), raw.length);
+            if (!compressor.hasDictionary() && store.size() >= ChapterCompressor.TRAINING_CHAPTERS) {
+                train();
+            }
+        }
+
+        private void train() throws IOException {
+            List<String> samples = new ArrayList<>();
+            for (long key : store.keys()) {
+                List<String> lines = read(key);
+                if (lines != null) {
+                    samples.add(String.join("\n", lines));
+                }
+                if (samples.size() == ChapterCompressor.TRAINING_CHAPTERS) {
+                    break;
+                }
+            }
+            compressor.train(samples);
+        }
+    }
+
+    /**
+     * Size of the chapter cache: chapters, bytes stored and what they would take uncompressed.
+     */
+    public static final class CacheStats {
+        private int books;
+        private int chapters;
+        private long diskBytes;
+        private long storedBytes;
+        private long rawBytes;
+
+        private void add(BookManifest manifest, long segmentBytes) {
+            if (manifest.count() == 0) {
+                return;
+            }
+            books++;
+            chapters += manifest.count();
+            diskBytes += segmentBytes;
+            storedBytes += manifest.getStoredBytes();
+            rawBytes += manifest.getRawBytes();
+        }
+
+        public int getBooks() { return books; }
+
+        public int getChapters() { return chapters; }
+
+        /** Segment bytes on disk, including garbage awaiting compaction. */
+        public long getDiskBytes() { return diskBytes; }
+
+        /** Stored size relative to the uncompressed text, 1.0 when nothing is compressed. */
+        public double getCompressionRatio() {
+            return rawBytes > 0 ? (double) storedBytes / rawBytes : 1.0;
+        }
+
+        public String describe() {
+            if (chapters == 0) {
+                return "\u65e0\u7f13\u5b58";
+            }
+            return books + " \u672c\u4e66 \u00b7 " + chapters + " \u7ae0 \u00b7 " + formatSize(diskBytes)
+                    + "\uff08\u539f\u6587 " + formatSize(rawBytes) + "\uff0c\u538b\u7f29\u81f3 "
+                    + Math.round(getCompressionRatio() * 100) + "%\uff09";
+        }
+
+        private static String formatSize(long bytes) {
+            if (bytes < 1024 * 1024) {
+                return (bytes + 1023) / 1024 + " KB";
+            }
+            return String.format("%.1f MB", bytes / (1024.0 * 1024));
+        }
+    }
+
+    /**
+     * A cached chapter list. A stale one is past its TTL and should be revalidated; a finished book's
+     * list has a TTL long enough that it is not.
+     */
+    public record CachedChapterList(List<ChapterInfo> chapters, boolean stale, boolean finished) {
+    }
+
+    /** A book directory as measured by a trim. */
+    private record BookUsage(Path dir, String name, long bytes, long modified, BookManifest manifest) {
+        /** Files change on refreshes and compaction too, so they only stand in for a missing record. */
+        long lastAccess() {
+            return manifest.getLastAccess() > 0 ? manifest.getLastAccess() : modified;
+        }
+
+        long value() {
+            return lastAccess() + Math.min(manifest.getReads(), MAX_READ_BONUS) * READ_BONUS_MS;
+        }
+    }
+
+    /** On-disk form of the validators of a cached chapter list. */
+    private static class CatalogMeta {
+        String rules;
+        HttpValidators validators;
+    }
+
+    /** On-disk form of a cached search page. */
+    private static class SearchPageEntry {
+        HttpValidators validators;
+        List<SearchResult> results;
+    }
+
     private static String md5(String input) {
         try {
             MessageDigest md = MessageDigest.getInstance("MD5");
@@ -0,0 +1,230 @@
+package com.fish.toucher.service;
+
+import com.intellij.openapi.diagnostic.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Adler32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses the cached chapters of one book with deflate, primed with a preset dictionary
+ * trained on the book's first cached chapters.
+ * <p>
+ * Chapters of one book share a lot of text that a single chapter is too short to exploit:
+ * the site's boilerplate lines, character names, recurring phrases. The dictionary puts those in
+ * deflate's window before the first byte, so even the start of a chapter compresses well.
+ * It is built once, from {@link #TRAINING_CHAPTERS} chapters, and never changes afterwards,
+ * since every chapter compressed with it needs the same dictionary to be read back;
+ * chapters cached before it existed stay compressed without one.
+ * <p>
+ * Stored form: the chapter as it is (UTF-8 text or {@link PackedLines}), or a marker byte that
+ * can start neither, the codec, the uncompressed length and the deflate stream.
+ */
+final class ChapterCompressor {
+
+    private static final Logger LOG = Logger.getInstance(ChapterCompressor.class);
+
+    static final String DICTIONARY_FILE = "content.dict";
+    /** Chapters the dictionary is trained on. */
+    static final int TRAINING_CHAPTERS = 8;
+
+    /** Deflate can only look back 32 KB, so a bigger dictionary would be wasted. */
+    private static final int MAX_DICTIONARY_SIZE = 32 * 1024;
+    /** Shorter chapters are stored as they are. */
+    private static final int MIN_COMPRESS_SIZE = 256;
+    private static final byte MARKER = (byte) 0xFF;
+    private static final byte CODEC_DEFLATE = 1;
+    private static final byte CODEC_DEFLATE_DICTIONARY = 2;
+    private static final int HEADER_SIZE = 6;
+
+    private final Path dictionaryFile;
+    private volatile byte[] dictionary;
+    private volatile int dictionaryId;
+
+    private ChapterCompressor(Path bookDir) {
+        this.dictionaryFile = bookDir.resolve(DICTIONARY_FILE);
+    }
+
+    /**
+     * The compressor of a book directory, with the book's dictionary if one was trained.
+     */
+    static ChapterCompressor open(Path bookDir) throws IOException {
+        ChapterCompressor compressor = new ChapterCompressor(bookDir);
+        if (Files.exists(compressor.dictionaryFile)) {
+            compressor.setDictionary(Files.readAllBytes(compressor.dictionaryFile));
+        }
+        return compressor;
+    }
+
+    boolean hasDictionary() {
+        return dictionary != null;
+    }
+
+    /**
+     * The stored form of a chapter; the chapter itself if compressing does not pay.
+     */
+    byte[] encode(byte[] raw) {
+        if (raw.length < MIN_COMPRESS_SIZE) {
+            return raw;
+        }
+        byte[] dict = dictionary;
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            if (dict != null) {
+                deflater.setDictionary(dict);
+            }
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + HEADER_SIZE);
+            out.write(MARKER);
+            out.write(dict != null ? CODEC_DEFLATE_DICTIONARY : CODEC_DEFLATE);
+            out.writeBytes(ByteBuffer.allocate(4).putInt(raw.length).array());
+            byte[] buf = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buf, 0, deflater.deflate(buf));
+            }
+            return out.size() < raw.length ? out.toByteArray() : raw;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /** The chapter as it was passed to {@link #encode}. */
+    byte[] decode(byte[] data) throws IOException {
+        if (data.length < HEADER_SIZE || data[0] != MARKER) {
+            return data;
+        }
+        byte codec = data[1];
+        int rawLength = ByteBuffer.wrap(data, 2, 4).getInt();
+        if (codec != CODEC_DEFLATE && codec != CODEC_DEFLATE_DICTIONARY) {
+            throw new IOException("Unknown chapter codec " + codec + " in " + dictionaryFile.getParent());
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, HEADER_SIZE, data.length - HEADER_SIZE);
+            byte[] raw = new byte[rawLength];
+            int n = 0;
+            while (n < rawLength && !inflater.finished()) {
+                int inflated = inflater.inflate(raw, n, rawLength - n);
+                if (inflated == 0 && inflater.needsDictionary()) {
+                    byte[] dict = dictionary;
+                    if (dict == null || inflater.getAdler() != dictionaryId) {
+                        throw new IOException("Chapter needs a dictionary that " + dictionaryFile + " does not match");
+                    }
+                    inflater.setDictionary(dict);
+                } else if (inflated == 0) {
+                    throw new IOException("Truncated compressed chapter in " + dictionaryFile.getParent());
+                }
+                n += inflated;
+            }
+            if (n < rawLength) {
+                throw new IOException("Truncated compressed chapter in " + dictionaryFile.getParent());
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed chapter in " + dictionaryFile.getParent(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Build and save the dictionary from sample chapters. Does nothing if the book already has one.
+     */
+    synchronized void train(List<String> samples) throws IOException {
+        if (dictionary != null) {
+            return;
+        }
+        byte[] dict = buildDictionary(samples);
+        if (dict.length == 0) {
+            return;
+        }
+        // A torn dictionary would make every chapter compressed with it unreadable
+        Path temp = dictionaryFile.resolveSibling(DICTIONARY_FILE + ".tmp");
+        Files.write(temp, dict);
+        Files.move(temp, dictionaryFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        setDictionary(dict);
+        LOG.info("Trained " + dict.length + " byte chapter dictionary from " + samples.size()
+                + " chapters for " + dictionaryFile.getParent());
+    }
+
+    private void setDictionary(byte[] dict) {
+        Adler32 adler = new Adler32();
+        adler.update(dict);
+        dictionaryId = (int) adler.getValue();
+        dictionary = dict;
+    }
+
+    /**
+     * Text that recurs across the samples, most valuable last (deflate references nearby bytes
+     * most cheaply): whole lines shared by several chapters, such as the site's notices, and
+     * clauses shared by several chapters, such as names and stock phrases. Space left over is
+     * filled with the start of the latest sample, for the book's everyday vocabulary.
+     */
+    static byte[] buildDictionary(List<String> samples) {
+        Map<String, Integer> chapterCounts = new HashMap<>();
+        for (String sample : samples) {
+            Set<String> seen = new HashSet<>();
+            for (String line : sample.split("\n")) {
+                String trimmed = line.strip();
+                if (trimmed.length() >= 4 && trimmed.length() <= 200) {
+                    seen.add(trimmed);
+                }
+                for (String clause : trimmed.split("[\uff0c\u3002\uff01\uff1f\uff1b\uff1a\u201c\u201d,.!?;:\"]")) {
+                    String c = clause.strip();
+                    if (c.length() >= 2 && c.length() <= 40) {
+                        seen.add(c);
+                    }
+                }
+            }
+            for (String s : seen) {
+                chapterCounts.merge(s, 1, Integer::sum);
+            }
+        }
+
+        List<Map.Entry<String, Integer>> shared = new ArrayList<>();
+        for (Map.Entry<String, Integer> entry : chapterCounts.entrySet()) {
+            if (entry.getValue() >= 2) {
+                shared.add(entry);
+            }
+        }
+        // Score by bytes saved: chapters it appears in times its length; best first
+        shared.sort((a, b) -> Long.compare(
+                (long) b.getValue() * b.getKey().length(), (long) a.getValue() * a.getKey().length()));
+
+        List<byte[]> picked = new ArrayList<>();
+        int size = 0;
+        for (Map.Entry<String, Integer> entry : shared) {
+            byte[] bytes = (entry.getKey() + "\n").getBytes(StandardCharsets.UTF_8);
+            if (size + bytes.length > MAX_DICTIONARY_SIZE) {
+                continue;
+            }
+            picked.add(bytes);
+            size += bytes.length;
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(MAX_DICTIONARY_SIZE);
+        if (!samples.isEmpty() && size < MAX_DICTIONARY_SIZE) {
+            byte[] filler = samples.get(samples.size() - 1).getBytes(StandardCharsets.UTF_8);
+            out.write(filler, 0, Math.min(filler.length, MAX_DICTIONARY_SIZE - size));
+        }
+        for (int i = picked.size() - 1; i >= 0; i--) {
+            out.writeBytes(picked.get(i));
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,123 @@
+package com.fish.toucher.service;
+
+import com.fish.toucher.model.ChapterInfo;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Content keys of a book's chapters in catalog order: the key of a chapter is a 64-bit hash of
+ * its normalized URL.
+ * <p>
+ * Cached content is stored under these keys, and this map, rebuilt whenever the catalog is, says
+ * which key each index currently has. A catalog that inserts, removes or reorders chapters, or
+ * spells their URLs differently (http vs https, a trailing slash, shuffled query parameters),
+ * thus finds their content where it was; a chapter that drops out of the catalog keeps its
+ * content until the cache janitor removes it.
+ */
+final class ChapterKeys {
+
+    static final ChapterKeys EMPTY = new ChapterKeys(new long[0]);
+
+    private final long[] keys;
+    /** First index of each key; a catalog may list a chapter twice. */
+    private final Map<Long, Integer> indexByKey;
+
+    private ChapterKeys(long[] keys) {
+        this.keys = keys;
+        this.indexByKey = new HashMap<>(keys.length * 2);
+        for (int i = 0; i < keys.length; i++) {
+            indexByKey.putIfAbsent(keys[i], i);
+        }
+    }
+
+    static ChapterKeys of(List<ChapterInfo> chapters) {
+        long[] keys = new long[chapters.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = keyOf(chapters.get(i).getChapterUrl(), i);
+        }
+        return new ChapterKeys(keys);
+    }
+
+    /** Content key of a chapter: by its URL, or by its catalog index if it has none. */
+    static long keyOf(ChapterInfo chapter) {
+        return keyOf(chapter.getChapterUrl(), chapter.getIndex());
+    }
+
+    private static long keyOf(String url, int index) {
+        // Without a URL the position is all there is to go by
+        return hash(url != null && !url.isBlank() ? normalize(url) : "#" + index);
+    }
+
+    int size() {
+        return keys.length;
+    }
+
+    boolean hasIndex(int index) {
+        return index >= 0 && index < keys.length;
+    }
+
+    /** Key of the chapter at an index; check {@link #hasIndex} first. */
+    long keyAt(int index) {
+        return keys[index];
+    }
+
+    /** Index of the chapter with a key, or -1 if the catalog no longer lists it. */
+    int indexOf(long key) {
+        Integer index = indexByKey.get(key);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * The parts of a chapter URL that identify the chapter: host in lower case, port unless it
+     * is the default, path without repeated or trailing slashes, and query parameters in sorted
+     * order. Scheme and fragment are dropped.
+     */
+    static String normalize(String url) {
+        String trimmed = url.trim();
+        try {
+            URI uri = new URI(trimmed);
+            if (uri.getHost() == null) {
+                return trimmed;
+            }
+            StringBuilder sb = new StringBuilder(uri.getHost().toLowerCase(Locale.ROOT));
+            int port = uri.getPort();
+            if (port > 0 && port != 80 && port != 443) {
+                sb.append(':').append(port);
+            }
+            String path = uri.getRawPath() != null ? uri.getRawPath().replaceAll("/{2,}", "/") : "";
+            if (path.length() > 1 && path.endsWith("/")) {
+                path = path.substring(0, path.length() - 1);
+            }
+            sb.append(path.isEmpty() ? "/" : path);
+            String query = uri.getRawQuery();
+            if (query != null && !query.isEmpty()) {
+                String[] params = query.split("&");
+                Arrays.sort(params);
+                sb.append('?').append(String.join("&", params));
+            }
+            return sb.toString();
+        } catch (URISyntaxException e) {
+            return trimmed;
+        }
+    }
+
+    private static long hash(String normalized) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(normalized.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            // MD5 is always available in standard JVMs
+            throw new RuntimeException("MD5 algorithm not available", e);
+        }
+    }
+}
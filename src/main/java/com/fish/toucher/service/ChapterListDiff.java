@@ -0,0 +1,126 @@
+package com.fish.toucher.service;
+
+import com.fish.toucher.model.ChapterInfo;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Difference between a cached chapter list and a freshly fetched one, matched by chapter URL.
+ * URLs are compared by their {@link ChapterKeys content key}, so a catalog that only changes how it
+ * spells them (http vs https, a trailing slash) still counts as unchanged and keeps its content.
+ * <p>
+ * The common case for a serialized novel is append-only: the cached list is a prefix of the new one,
+ * so only the new tail has to be written and shown. Anything else (chapters removed, inserted or
+ * reordered) renumbers chapters, and whatever is kept by index, such as reading progress, must be
+ * moved along with them.
+ */
+public class ChapterListDiff {
+
+    private final List<ChapterInfo> chapters;
+    private final int previousSize;
+    private final boolean appendOnly;
+    private final Map<Integer, Integer> moved;
+    private final List<Integer> removed;
+
+    private ChapterListDiff(List<ChapterInfo> chapters, int previousSize, boolean appendOnly,
+                            Map<Integer, Integer> moved, List<Integer> removed) {
+        this.chapters = chapters;
+        this.previousSize = previousSize;
+        this.appendOnly = appendOnly;
+        this.moved = moved;
+        this.removed = removed;
+    }
+
+    /**
+     * A refresh that found nothing new, e.g. a 304 for the cached list.
+     */
+    public static ChapterListDiff unchanged(List<ChapterInfo> chapters) {
+        return new ChapterListDiff(chapters, chapters.size(), true, Collections.emptyMap(), Collections.emptyList());
+    }
+
+    /**
+     * Compare a fetched list against the cached one.
+     * @param cached the cached list, or null if nothing was cached
+     */
+    public static ChapterListDiff compute(List<ChapterInfo> cached, List<ChapterInfo> fresh) {
+        if (cached == null || cached.isEmpty()) {
+            return new ChapterListDiff(fresh, 0, true, Collections.emptyMap(), Collections.emptyList());
+        }
+        if (isPrefix(cached, fresh)) {
+            return new ChapterListDiff(fresh, cached.size(), true, Collections.emptyMap(), Collections.emptyList());
+        }
+
+        // Catalogs can list a URL twice (e.g. a "latest chapters" block), so match occurrences in order
+        Map<Long, Deque<Integer>> freshIndex = new HashMap<>();
+        for (int i = 0; i < fresh.size(); i++) {
+            freshIndex.computeIfAbsent(ChapterKeys.keyOf(fresh.get(i)), k -> new ArrayDeque<>()).add(i);
+        }
+        Map<Integer, Integer> moved = new LinkedHashMap<>();
+        List<Integer> removed = new ArrayList<>();
+        for (int i = 0; i < cached.size(); i++) {
+            Deque<Integer> positions = freshIndex.get(ChapterKeys.keyOf(cached.get(i)));
+            Integer newIndex = positions != null ? positions.poll() : null;
+            if (newIndex == null) {
+                removed.add(i);
+            } else if (newIndex != i) {
+                moved.put(i, newIndex);
+            }
+        }
+        return new ChapterListDiff(fresh, cached.size(), false, moved, removed);
+    }
+
+    /** The complete new list. */
+    public List<ChapterInfo> getChapters() { return chapters; }
+
+    /** Number of chapters in the cached list the diff was computed against. */
+    public int getPreviousSize() { return previousSize; }
+
+    /** True if the previous list is unchanged at the head of the new one. */
+    public boolean isAppendOnly() { return appendOnly; }
+
+    /** True if the refresh changed nothing at all. */
+    public boolean isUnchanged() { return appendOnly && chapters.size() == previousSize; }
+
+    /** Chapters after the previous list; only meaningful when {@link #isAppendOnly()}. */
+    public List<ChapterInfo> getAdded() {
+        return appendOnly ? chapters.subList(previousSize, chapters.size()) : Collections.emptyList();
+    }
+
+    /** Old index → new index of chapters that kept their URL but changed position. */
+    public Map<Integer, Integer> getMoved() { return moved; }
+
+    /** Old indices of chapters whose URL is gone from the new list. */
+    public List<Integer> getRemoved() { return removed; }
+
+    /**
+     * New index of the chapter that was at {@code oldIndex}, or -1 if it was removed.
+     */
+    public int newIndexOf(int oldIndex) {
+        if (oldIndex < 0 || removed.contains(oldIndex)) {
+            return -1;
+        }
+        return moved.getOrDefault(oldIndex, oldIndex);
+    }
+
+    private static boolean isPrefix(List<ChapterInfo> cached, List<ChapterInfo> fresh) {
+        if (cached.size() > fresh.size()) {
+            return false;
+        }
+        for (int i = 0; i < cached.size(); i++) {
+            ChapterInfo a = cached.get(i);
+            ChapterInfo b = fresh.get(i);
+            if (ChapterKeys.keyOf(a) != ChapterKeys.keyOf(b) || !Objects.equals(a.getName(), b.getName())) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,244 @@
+package com.fish.toucher.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * In-memory tier of the chapter cache: chapter text already split into lines, bounded by the
+ * total number of characters held.
+ * <p>
+ * Eviction follows W-TinyLFU: new chapters enter a small LRU window, so the chapter just read and
+ * its neighbours survive back-and-forth navigation. Chapters leaving the window only displace an
+ * entry of the main LRU area if a frequency sketch says they are used more often, which keeps a
+ * burst of one-off reads (a bulk download, skimming a long catalog) from flushing the chapters
+ * that are actually re-read.
+ */
+final class ChapterMemoryCache {
+
+    /** Share of the budget given to the admission window. */
+    private static final int WINDOW_PERCENT = 20;
+
+    /** A chapter of a book by its content key, see {@link ChapterKeys#keyOf}. */
+    record Key(String bookUrl, long chapterKey) {}
+
+    private record Entry(Key key, List<String> lines, long weight) {}
+
+    private final long maxWeight;
+    private final long windowMaxWeight;
+    private final LinkedHashMap<Key, Entry> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<Key, Entry> main = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch = new FrequencySketch();
+    private long windowWeight;
+    private long mainWeight;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long rejections;
+
+    /**
+     * @param maxChars budget in characters of line text
+     */
+    ChapterMemoryCache(long maxChars) {
+        this.maxWeight = maxChars;
+        this.windowMaxWeight = maxChars * WINDOW_PERCENT / 100;
+    }
+
+    /**
+     * The cached lines of a chapter, or null. The list is unmodifiable.
+     */
+    synchronized List<String> get(Key key) {
+        sketch.increment(key);
+        Entry entry = window.get(key);
+        if (entry == null) {
+            entry = main.get(key);
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.lines;
+    }
+
+    /**
+     * Cache the lines of a chapter, replacing what was cached for it. A chapter bigger than the
+     * whole window is not kept, since it would push out everything else.
+     */
+    synchronized void put(Key key, List<String> lines) {
+        remove(key);
+        long weight = weigh(lines);
+        if (weight > windowMaxWeight) {
+            return;
+        }
+        sketch.increment(key);
+        // Packed lines are immutable already, and copying would decode every line
+        List<String> copy = lines instanceof PackedLines
+                ? lines : Collections.unmodifiableList(Arrays.asList(lines.toArray(new String[0])));
+        Entry entry = new Entry(key, copy, weight);
+        window.put(key, entry);
+        windowWeight += weight;
+        while (windowWeight > windowMaxWeight) {
+            Entry candidate = removeEldest(window);
+            windowWeight -= candidate.weight;
+            admit(candidate);
+        }
+    }
+
+    synchronized void remove(Key key) {
+        Entry entry = window.remove(key);
+        if (entry != null) {
+            windowWeight -= entry.weight;
+        }
+        entry = main.remove(key);
+        if (entry != null) {
+            mainWeight -= entry.weight;
+        }
+    }
+
+    /**
+     * Drop every chapter of a book, e.g. after its cache was cleared or its chapters renumbered.
+     */
+    synchronized void removeBook(String bookUrl) {
+        windowWeight -= removeBook(window, bookUrl);
+        mainWeight -= removeBook(main, bookUrl);
+    }
+
+    synchronized void clear() {
+        window.clear();
+        main.clear();
+        windowWeight = 0;
+        mainWeight = 0;
+    }
+
+    /**
+     * One-line summary for logs: size, entries and hit rate.
+     */
+    synchronized String describe() {
+        long requests = hits + misses;
+        return (window.size() + main.size()) + " chapters, " + (windowWeight + mainWeight) / 1024 + "K of "
+                + maxWeight / 1024 + "K chars, hit rate " + (requests > 0 ? hits * 100 / requests : 0) + "%"
+                + ", " + evictions + " evicted, " + rejections + " not admitted";
+    }
+
+    /**
+     * Move a chapter from the window into the main area. The least recently used main entries it
+     * would displace are compared with it one at a time; if any of them is used at least as often,
+     * the candidate is dropped and the main area left as it was. Only once the candidate is
+     * admitted are they evicted.
+     */
+    private void admit(Entry candidate) {
+        long excess = mainWeight + candidate.weight - (maxWeight - windowMaxWeight);
+        int candidateFrequency = sketch.frequency(candidate.key);
+        List<Entry> victims = new ArrayList<>();
+        // Iterating does not count as access, so the LRU order is unchanged
+        Iterator<Entry> it = main.values().iterator();
+        while (excess > 0 && it.hasNext()) {
+            Entry victim = it.next();
+            if (candidateFrequency <= sketch.frequency(victim.key)) {
+                rejections++;
+                return;
+            }
+            victims.add(victim);
+            excess -= victim.weight;
+        }
+        for (Entry victim : victims) {
+            main.remove(victim.key);
+            mainWeight -= victim.weight;
+            evictions++;
+        }
+        main.put(candidate.key, candidate);
+        mainWeight += candidate.weight;
+    }
+
+    private static Entry removeEldest(LinkedHashMap<Key, Entry> map) {
+        Iterator<Entry> it = map.values().iterator();
+        Entry eldest = it.next();
+        it.remove();
+        return eldest;
+    }
+
+    private static long removeBook(LinkedHashMap<Key, Entry> map, String bookUrl) {
+        long removed = 0;
+        Iterator<Entry> it = map.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.key.bookUrl().equals(bookUrl)) {
+                removed += entry.weight;
+                it.remove();
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Characters of text plus one per line break. The budget counts two-byte characters, so
+     * packed lines, held as UTF-8 bytes, weigh half their size.
+     */
+    private static long weigh(List<String> lines) {
+        if (lines instanceof PackedLines packed) {
+            return packed.byteSize() / 2 + lines.size();
+        }
+        long weight = lines.size();
+        for (String line : lines) {
+            weight += line.length();
+        }
+        return weight;
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters estimating how often each key was requested recently.
+     * All counters are halved periodically, so old popularity fades.
+     */
+    private static final class FrequencySketch {
+        private static final int WIDTH = 1 << 12;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x97cb3127, 0x2f4b1a3d, 0x6c8e9cf5, 0xc2b2ae35};
+
+        private final byte[][] rows = new byte[SEEDS.length][WIDTH];
+        private final int resetAfter = WIDTH * 10;
+        private int additions;
+
+        void increment(Object key) {
+            int hash = key.hashCode();
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                int index = indexOf(hash, i);
+                if (rows[i][index] < MAX_COUNT) {
+                    rows[i][index]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= resetAfter) {
+                halve();
+            }
+        }
+
+        int frequency(Object key) {
+            int hash = key.hashCode();
+            int min = MAX_COUNT;
+            for (int i = 0; i < SEEDS.length; i++) {
+                min = Math.min(min, rows[i][indexOf(hash, i)]);
+            }
+            return min;
+        }
+
+        private void halve() {
+            for (byte[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>= 1;
+                }
+            }
+            additions /= 2;
+        }
+
+        private static int indexOf(int hash, int row) {
+            int h = hash * SEEDS[row];
+            h ^= h >>> 16;
+            return h & (WIDTH - 1);
+        }
+    }
+}
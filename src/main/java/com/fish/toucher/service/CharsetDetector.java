@@ -0,0 +1,164 @@
+package com.fish.toucher.service;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Decides the charset of a response body from its first bytes, in the order browsers use:
+ * byte order mark, Content-Type header, {@code <meta charset>} / XML declaration, and finally
+ * sniffing (valid UTF-8, otherwise GB18030, which covers the GBK / GB2312 pages that
+ * declare nothing at all).
+ */
+final class CharsetDetector {
+
+    /** How much of the body is inspected; jsoup looks for {@code <meta>} within the same window. */
+    static final int PREFIX_SIZE = 5120;
+
+    private static final Charset GB18030 = Charset.forName("GB18030");
+
+    private static final Pattern META_CHARSET = Pattern.compile(
+            "<meta[^>]*?charset\\s*=\\s*[\"']?\\s*([A-Za-z0-9_.:\\-]+)", Pattern.CASE_INSENSITIVE);
+    private static final Pattern XML_ENCODING = Pattern.compile(
+            "^\\s*<\\?xml[^>]*?encoding\\s*=\\s*[\"']([A-Za-z0-9_.:\\-]+)", Pattern.CASE_INSENSITIVE);
+
+    private CharsetDetector() {}
+
+    /**
+     * Detect the charset of a stream without consuming it: the prefix is read under a mark
+     * and the stream is reset, so the caller can parse it from the start in the same pass.
+     */
+    static Charset detect(BufferedInputStream in, String contentType) throws IOException {
+        in.mark(PREFIX_SIZE);
+        byte[] prefix = new byte[PREFIX_SIZE];
+        int length = 0;
+        int n;
+        while (length < PREFIX_SIZE && (n = in.read(prefix, length, PREFIX_SIZE - length)) > 0) {
+            length += n;
+        }
+        in.reset();
+        return detect(prefix, length, length < PREFIX_SIZE, contentType);
+    }
+
+    /**
+     * Detect the charset of a fully buffered body.
+     */
+    static Charset detect(byte[] body, String contentType) {
+        int length = Math.min(body.length, PREFIX_SIZE);
+        return detect(body, length, length == body.length, contentType);
+    }
+
+    /**
+     * @param complete true if {@code prefix} holds the whole body, so a multi-byte sequence cut off
+     *                 at the end is an error rather than a truncated window
+     */
+    private static Charset detect(byte[] prefix, int length, boolean complete, String contentType) {
+        Charset bom = bomCharset(prefix, length);
+        if (bom != null) {
+            return bom;
+        }
+        Charset header = lookup(headerCharsetName(contentType));
+        if (header != null) {
+            return header;
+        }
+        // Markup is ASCII-compatible in every charset we care about, so Latin-1 is a safe lens for it
+        String head = new String(prefix, 0, length, StandardCharsets.ISO_8859_1);
+        Matcher meta = META_CHARSET.matcher(head);
+        if (meta.find()) {
+            Charset declared = lookup(meta.group(1));
+            if (declared != null) {
+                return declared;
+            }
+        }
+        Matcher xml = XML_ENCODING.matcher(head);
+        if (xml.find()) {
+            Charset declared = lookup(xml.group(1));
+            if (declared != null) {
+                return declared;
+            }
+        }
+        return isValidUtf8(prefix, length, complete) ? StandardCharsets.UTF_8 : GB18030;
+    }
+
+    /**
+     * The charset parameter of a Content-Type header, or null if there is none.
+     */
+    static String headerCharsetName(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        int idx = contentType.toLowerCase().indexOf("charset=");
+        if (idx < 0) {
+            return null;
+        }
+        String name = contentType.substring(idx + 8).split(";")[0].trim().replace("\"", "").replace("'", "");
+        return name.isEmpty() ? null : name;
+    }
+
+    private static Charset bomCharset(byte[] b, int length) {
+        if (length >= 3 && (b[0] & 0xFF) == 0xEF && (b[1] & 0xFF) == 0xBB && (b[2] & 0xFF) == 0xBF) {
+            return StandardCharsets.UTF_8;
+        }
+        if (length >= 2 && (b[0] & 0xFF) == 0xFE && (b[1] & 0xFF) == 0xFF) {
+            return StandardCharsets.UTF_16BE;
+        }
+        if (length >= 2 && (b[0] & 0xFF) == 0xFF && (b[1] & 0xFF) == 0xFE) {
+            return StandardCharsets.UTF_16LE;
+        }
+        return null;
+    }
+
+    /**
+     * Resolve a declared charset name. GB2312 and GBK labels are widened to GB18030, as browsers do:
+     * sites labelled "gb2312" routinely contain GBK-only characters that a strict decoder would mangle.
+     */
+    private static Charset lookup(String name) {
+        if (name == null || name.isBlank()) {
+            return null;
+        }
+        String normalized = name.trim().toLowerCase();
+        if (normalized.equals("gb2312") || normalized.equals("gbk") || normalized.equals("x-gbk")
+                || normalized.equals("gb_2312-80") || normalized.equals("gb18030")) {
+            return GB18030;
+        }
+        try {
+            return Charset.forName(normalized);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static boolean isValidUtf8(byte[] data, int length, boolean complete) {
+        int i = 0;
+        while (i < length) {
+            int b = data[i] & 0xFF;
+            int extra;
+            if (b < 0x80) {
+                i++;
+                continue;
+            } else if (b >= 0xC2 && b <= 0xDF) {
+                extra = 1;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                extra = 2;
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                extra = 3;
+            } else {
+                return false;
+            }
+            if (i + extra >= length) {
+                // Sequence runs past the inspected window: only an error if this is the real end
+                return !complete;
+            }
+            for (int k = 1; k <= extra; k++) {
+                if ((data[i + k] & 0xC0) != 0x80) {
+                    return false;
+                }
+            }
+            i += extra + 1;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,543 @@
+package com.fish.toucher.service;
+
+import com.fish.toucher.model.BookSource;
+import com.google.gson.Gson;
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.Option;
+import com.jayway.jsonpath.spi.json.GsonJsonProvider;
+import com.jayway.jsonpath.spi.json.JsonProvider;
+import com.jayway.jsonpath.spi.json.JsonSmartJsonProvider;
+import com.jayway.jsonpath.spi.mapper.GsonMappingProvider;
+import com.jayway.jsonpath.spi.mapper.JsonSmartMappingProvider;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Immutable, pre-compiled form of a {@link BookSource}: CSS selectors parsed into Evaluators,
+ * JSONPath expressions compiled, "selector@attr" rules split, URL templates tokenized.
+ * For "json" rules a response is parsed once into a {@link DocumentContext}; list items are
+ * then evaluated with compiled relative paths against the already parsed objects.
+ * <p>
+ * Plans are cached per source name and recompiled when the BookSource object changes;
+ * {@link BookSourceManager} invalidates the entry whenever a source is saved or deleted.
+ * Each rule section is compiled independently, so a broken search rule does not prevent
+ * reading chapters; its error is rethrown when that section is used.
+ */
+final class CompiledSource {
+
+    private static final Map<String, CompiledSource> CACHE = new ConcurrentHashMap<>();
+    private static final Gson RULES_GSON = new Gson();
+
+    private final BookSource source;
+    private final URI baseUri;
+    private final Configuration jsonConfig;
+    private final Configuration lenientJsonConfig;
+    private final SearchPlan search;
+    private final ChapterPlan chapter;
+    private final ContentPlan content;
+    private final RuntimeException searchError;
+    private final RuntimeException chapterError;
+    private final RuntimeException contentError;
+    private final Pattern mirrorPattern;
+    private final String rulesTag;
+
+    private CompiledSource(BookSource source) {
+        this.source = source;
+        this.baseUri = parseUri(source.getUrl());
+        this.jsonConfig = jsonConfiguration(source.getJsonProvider());
+        // Missing fields in a list item are common and just mean "empty"
+        this.lenientJsonConfig = jsonConfig.addOptions(Option.SUPPRESS_EXCEPTIONS);
+
+        SearchPlan sp = null;
+        RuntimeException se = null;
+        try {
+            sp = source.getSearchRule() != null ? new SearchPlan(source.getSearchRule()) : null;
+        } catch (RuntimeException e) {
+            se = e;
+        }
+        this.search = sp;
+        this.searchError = se;
+
+        ChapterPlan cp = null;
+        RuntimeException ce = null;
+        try {
+            cp = source.getChapterRule() != null ? new ChapterPlan(source.getChapterRule()) : null;
+        } catch (RuntimeException e) {
+            ce = e;
+        }
+        this.chapter = cp;
+        this.chapterError = ce;
+
+        ContentPlan tp = null;
+        RuntimeException te = null;
+        try {
+            tp = source.getContentRule() != null ? new ContentPlan(source.getContentRule()) : null;
+        } catch (RuntimeException e) {
+            te = e;
+        }
+        this.content = tp;
+        this.contentError = te;
+
+        this.mirrorPattern = compileMirrorPattern(source.getMirror());
+        // Only what shapes a parsed search page or catalog; toggling a source or its rate limit keeps its caches
+        this.rulesTag = Integer.toHexString(RULES_GSON.toJson(new Object[]{
+                source.getUrl(), source.getJsonProvider(), source.getSearchRule(), source.getChapterRule()}).hashCode());
+    }
+
+    /**
+     * Get the compiled plan of a source, compiling it on first use.
+     */
+    static CompiledSource of(BookSource source) {
+        String key = source.getName() != null ? source.getName() : "";
+        CompiledSource cached = CACHE.get(key);
+        if (cached != null && cached.source == source) {
+            return cached;
+        }
+        CompiledSource compiled = new CompiledSource(source);
+        CACHE.put(key, compiled);
+        return compiled;
+    }
+
+    /**
+     * Drop the plan of a source, e.g. after it was edited.
+     */
+    static void invalidate(String sourceName) {
+        if (sourceName != null) {
+            CACHE.remove(sourceName);
+        }
+    }
+
+    static void invalidateAll() {
+        CACHE.clear();
+    }
+
+    BookSource source() { return source; }
+
+    /**
+     * Fingerprint of the source's search and chapter rules. Anything cached from a parse (search pages,
+     * catalog validators) is tagged with it, so an edited rule never revalidates an old parse.
+     */
+    String rulesTag() { return rulesTag; }
+
+    /** Key of a search page in the search cache: the same URL is parsed differently per source and rules. */
+    String searchCacheKey(String searchUrl) {
+        return source.getName() + '\n' + rulesTag + '\n' + searchUrl;
+    }
+
+    /**
+     * The chapter URL rewritten for the source's mirror, or null if there is no mirror
+     * or its pattern does not match this URL.
+     */
+    String mirrorUrl(String chapterUrl) {
+        if (mirrorPattern == null || chapterUrl == null) {
+            return null;
+        }
+        Matcher m = mirrorPattern.matcher(chapterUrl);
+        if (!m.find()) {
+            return null;
+        }
+        String replacement = source.getMirror().getUrlReplacement();
+        return m.replaceFirst(replacement != null ? replacement : "");
+    }
+
+    private static Pattern compileMirrorPattern(BookSource.Mirror mirror) {
+        if (mirror == null || mirror.getSource() == null || mirror.getSource().isBlank()
+                || mirror.getUrlPattern() == null || mirror.getUrlPattern().isBlank()) {
+            return null;
+        }
+        try {
+            return Pattern.compile(mirror.getUrlPattern());
+        } catch (PatternSyntaxException e) {
+            // A broken mirror rule only disables hedging; the source itself still works
+            return null;
+        }
+    }
+
+    /** The source's base URL, or null if it is missing or malformed. */
+    URI baseUri() { return baseUri; }
+
+    /**
+     * Parse a JSON response once; every path of the rule is then read from this context.
+     */
+    DocumentContext parseJson(InputStream body, Charset charset) {
+        return JsonPath.using(jsonConfig).parse(body, charset.name());
+    }
+
+    /**
+     * Read the list path and return its items as parsed objects, or an empty list if it matched nothing.
+     */
+    List<Object> readJsonList(DocumentContext doc, JsonPath listPath) {
+        Object result = doc.read(listPath);
+        JsonProvider provider = jsonConfig.jsonProvider();
+        List<Object> items = new ArrayList<>();
+        if (result != null && provider.isArray(result)) {
+            for (Object item : provider.toIterable(result)) {
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
+    /**
+     * Read a single value (e.g. chapter content) as a string, or "" if the path matched nothing.
+     */
+    String readJsonString(DocumentContext doc, JsonPath path) {
+        return FieldRule.stringValue(doc.read(path), jsonConfig.jsonProvider());
+    }
+
+    /**
+     * Evaluate a field rule against one list item.
+     */
+    String extract(FieldRule field, Object item) {
+        return field.extract(item, lenientJsonConfig);
+    }
+
+    private static Configuration jsonConfiguration(String provider) {
+        if ("gson".equalsIgnoreCase(provider)) {
+            return Configuration.builder()
+                    .jsonProvider(new GsonJsonProvider())
+                    .mappingProvider(new GsonMappingProvider())
+                    .build();
+        }
+        return Configuration.builder()
+                .jsonProvider(new JsonSmartJsonProvider())
+                .mappingProvider(new JsonSmartMappingProvider())
+                .build();
+    }
+
+    SearchPlan search() {
+        if (searchError != null) throw searchError;
+        if (search == null) throw new IllegalStateException("Source '" + source.getName() + "' has no search rule");
+        return search;
+    }
+
+    ChapterPlan chapter() {
+        if (chapterError != null) throw chapterError;
+        if (chapter == null) throw new IllegalStateException("Source '" + source.getName() + "' has no chapter rule");
+        return chapter;
+    }
+
+    ContentPlan content() {
+        if (contentError != null) throw contentError;
+        if (content == null) throw new IllegalStateException("Source '" + source.getName() + "' has no content rule");
+        return content;
+    }
+
+    // --- Rule sections ---
+
+    static final class SearchPlan {
+        final UrlTemplate url;
+        final String method;
+        final boolean json;
+        final Evaluator list;
+        final JsonPath listPath;
+        final FieldRule name;
+        final FieldRule author;
+        final FieldRule bookUrl;
+        final FieldRule coverUrl;
+        final BodyLimits limits;
+
+        private SearchPlan(BookSource.SearchRule rule) {
+            this.url = UrlTemplate.parse(rule.getUrl());
+            this.method = rule.getMethod() != null ? rule.getMethod() : "GET";
+            this.json = "json".equalsIgnoreCase(rule.getRuleType());
+            this.list = json ? null : QueryParser.parse(rule.getList());
+            this.listPath = json ? JsonPath.compile(rule.getList()) : null;
+            this.name = FieldRule.parse(rule.getName(), json);
+            this.author = FieldRule.parse(rule.getAuthor(), json);
+            this.bookUrl = FieldRule.parse(rule.getBookUrl(), json);
+            this.coverUrl = FieldRule.parse(rule.getCoverUrl(), json);
+            this.limits = BodyLimits.of(rule.getLimits(), BodyLimits.SEARCH_MAX_BYTES, json);
+        }
+    }
+
+    static final class ChapterPlan {
+        final UrlTemplate url;
+        final String method;
+        final boolean json;
+        final Evaluator list;
+        final JsonPath listPath;
+        final FieldRule name;
+        final FieldRule chapterUrl;
+        final PagingPlan paging;
+        final BodyLimits limits;
+
+        private ChapterPlan(BookSource.ChapterRule rule) {
+            this.url = UrlTemplate.parse(rule.getUrl());
+            this.method = rule.getMethod() != null ? rule.getMethod() : "GET";
+            this.json = "json".equalsIgnoreCase(rule.getRuleType());
+            this.list = json ? null : QueryParser.parse(rule.getList());
+            this.listPath = json ? JsonPath.compile(rule.getList()) : null;
+            this.name = FieldRule.parse(rule.getName(), json);
+            this.chapterUrl = FieldRule.parse(rule.getChapterUrl(), json);
+            this.paging = new PagingPlan(rule.getNextPage(), rule.getPageUrlTemplate(), rule.getPageCount(), json);
+            this.limits = BodyLimits.of(rule.getLimits(), BodyLimits.CATALOG_MAX_BYTES, json);
+        }
+    }
+
+    static final class ContentPlan {
+        final UrlTemplate url;
+        final String method;
+        final boolean json;
+        final boolean stream;
+        final Evaluator content;
+        final JsonPath contentPath;
+        /** All purify selectors combined into one evaluator, or null if there are none. */
+        final Evaluator purify;
+        /** Whether closed non-content subtrees may be discarded while streaming. */
+        final boolean prunable;
+        final PagingPlan paging;
+        final BodyLimits limits;
+
+        private ContentPlan(BookSource.ContentRule rule) {
+            this.url = UrlTemplate.parse(rule.getUrl());
+            this.method = rule.getMethod() != null ? rule.getMethod() : "GET";
+            this.json = "json".equalsIgnoreCase(rule.getRuleType());
+            this.paging = new PagingPlan(rule.getNextPage(), rule.getPageUrlTemplate(), rule.getPageCount(), json);
+            this.limits = BodyLimits.of(rule.getLimits(), BodyLimits.CONTENT_MAX_BYTES, json);
+            // The next-page link usually follows the content, which streaming never reads
+            this.stream = rule.isStream() && !json && !paging.isPaged();
+            this.content = json ? null : QueryParser.parse(rule.getContent());
+            this.contentPath = json ? JsonPath.compile(rule.getContent()) : null;
+            List<String> purifyList = rule.getPurify() != null ? rule.getPurify() : Collections.emptyList();
+            List<String> selectors = new ArrayList<>();
+            for (String p : purifyList) {
+                if (p != null && !p.isBlank()) selectors.add(p.trim());
+            }
+            this.purify = selectors.isEmpty() || json ? null : QueryParser.parse(String.join(",", selectors));
+            this.prunable = !json && isPrunable(rule.getContent());
+        }
+
+        /**
+         * Closed subtrees can only be discarded if the content selector never looks at siblings,
+         * positions or descendants; otherwise removing them could change what it matches.
+         */
+        private static boolean isPrunable(String selector) {
+            return selector.indexOf(':') < 0 && selector.indexOf('+') < 0 && selector.indexOf('~') < 0;
+        }
+    }
+
+    // --- Field rules ---
+
+    /**
+     * How a catalog or chapter continues over several pages. A known page count together with
+     * a page URL template lets every page be requested up front; otherwise pages are followed
+     * one by one via the next-page link (or the template, until a page comes back empty).
+     */
+    static final class PagingPlan {
+        /** Rule for the next page link, or null. */
+        final FieldRule nextPage;
+        /** URL of page N ({{page}}), or null. */
+        final UrlTemplate pageUrl;
+        /** Rule for the text holding the total page count, or null. */
+        final FieldRule pageCount;
+
+        private PagingPlan(String nextPage, String pageUrlTemplate, String pageCount, boolean json) {
+            this.nextPage = isBlank(nextPage) ? null : FieldRule.parse(nextPage.trim(), json);
+            this.pageUrl = isBlank(pageUrlTemplate) ? null : UrlTemplate.parse(pageUrlTemplate.trim());
+            this.pageCount = isBlank(pageCount) ? null : FieldRule.parse(pageCount.trim(), json);
+        }
+
+        boolean isPaged() {
+            return nextPage != null || pageUrl != null;
+        }
+
+        private static boolean isBlank(String s) {
+            return s == null || s.isBlank();
+        }
+    }
+
+    /**
+     * A pre-split field rule. For html: "selector@attr" or "@attr" (the list element itself);
+     * no "@" means the whole rule is a selector and the text is taken. For json: a plain key,
+     * a nested path such as "book.author.name", or a full JSONPath starting with "$",
+     * evaluated relative to the list item.
+     */
+    static final class FieldRule {
+        private static final FieldRule EMPTY = new FieldRule(null, null, null, null);
+
+        private final Evaluator selector;
+        private final String attr;
+        private final String key;
+        private final JsonPath path;
+
+        private FieldRule(Evaluator selector, String attr, String key, JsonPath path) {
+            this.selector = selector;
+            this.attr = attr;
+            this.key = key;
+            this.path = path;
+        }
+
+        static FieldRule parse(String rule, boolean json) {
+            if (rule == null || rule.isEmpty()) {
+                return EMPTY;
+            }
+            if (json) {
+                String r = rule.trim();
+                if (r.startsWith("$")) {
+                    return new FieldRule(null, null, null, JsonPath.compile(r));
+                }
+                if (r.indexOf('.') >= 0 || r.indexOf('[') >= 0) {
+                    return new FieldRule(null, null, null, JsonPath.compile("$." + r));
+                }
+                // Flat key: a direct map lookup is cheaper than evaluating a path
+                return new FieldRule(null, null, r, null);
+            }
+            String selector;
+            String attr;
+            int atIndex = rule.indexOf('@');
+            if (atIndex < 0) {
+                selector = rule;
+                attr = "text";
+            } else {
+                selector = rule.substring(0, atIndex).trim();
+                attr = rule.substring(atIndex + 1).trim();
+            }
+            return new FieldRule(selector.isEmpty() ? null : QueryParser.parse(selector), attr, null, null);
+        }
+
+        /**
+         * Special attrs: @text → el.text(), @href → el.absUrl("href"), @src → el.absUrl("src").
+         */
+        String extract(Element parent) {
+            if (attr == null) {
+                return "";
+            }
+            Element target = selector == null ? parent : parent.selectFirst(selector);
+            if (target == null) {
+                return "";
+            }
+            return switch (attr) {
+                case "text" -> target.text();
+                case "href" -> target.absUrl("href");
+                case "src" -> target.absUrl("src");
+                default -> target.attr(attr);
+            };
+        }
+
+        private String extract(Object item, Configuration conf) {
+            if (item == null) {
+                return "";
+            }
+            JsonProvider provider = conf.jsonProvider();
+            if (key != null) {
+                return provider.isMap(item) ? stringValue(provider.getMapValue(item, key), provider) : "";
+            }
+            if (path != null) {
+                return stringValue(path.read(item, conf), provider);
+            }
+            return "";
+        }
+
+        private static String stringValue(Object value, JsonProvider provider) {
+            if (value == null || value == JsonProvider.UNDEFINED) {
+                return "";
+            }
+            Object unwrapped = provider.unwrap(value);
+            return unwrapped != null ? unwrapped.toString() : "";
+        }
+    }
+
+    // --- URL templates ---
+
+    /**
+     * A URL template split into literal text and {{placeholder}} tokens once, so expanding it
+     * is a single pass. Unknown placeholders are kept verbatim.
+     */
+    static final class UrlTemplate {
+        private final String[] literals;
+        private final String[] names;
+
+        private UrlTemplate(String[] literals, String[] names) {
+            this.literals = literals;
+            this.names = names;
+        }
+
+        static UrlTemplate parse(String template) {
+            String t = template != null ? template : "";
+            List<String> literals = new ArrayList<>();
+            List<String> names = new ArrayList<>();
+            int pos = 0;
+            while (true) {
+                int open = t.indexOf("{{", pos);
+                int close = open < 0 ? -1 : t.indexOf("}}", open + 2);
+                if (close < 0) {
+                    literals.add(t.substring(pos));
+                    break;
+                }
+                literals.add(t.substring(pos, open));
+                names.add(t.substring(open + 2, close).trim());
+                pos = close + 2;
+            }
+            return new UrlTemplate(literals.toArray(new String[0]), names.toArray(new String[0]));
+        }
+
+        String expand(String name, String value) {
+            return expand(Map.of(name, value));
+        }
+
+        String expand(Map<String, String> vars) {
+            StringBuilder sb = new StringBuilder(literals[0]);
+            for (int i = 0; i < names.length; i++) {
+                String value = vars.get(names[i]);
+                sb.append(value != null ? value : "{{" + names[i] + "}}");
+                sb.append(literals[i + 1]);
+            }
+            return sb.toString();
+        }
+    }
+
+    // --- URL resolution ---
+
+    static URI parseUri(String url) {
+        if (url == null || url.isEmpty()) {
+            return null;
+        }
+        try {
+            return URI.create(url);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Resolve a potentially relative URL against an already parsed base URI.
+     */
+    static String resolveUrl(URI base, String url) {
+        if (url == null || url.isEmpty()) {
+            return "";
+        }
+        // Already absolute
+        if (url.startsWith("http://") || url.startsWith("https://")) {
+            return url;
+        }
+        // Protocol-relative
+        if (url.startsWith("//")) {
+            return (base != null && base.getScheme() != null ? base.getScheme() : "https") + ":" + url;
+        }
+        // Path-relative
+        if (base == null) {
+            return url;
+        }
+        try {
+            return base.resolve(url).toString();
+        } catch (Exception e) {
+            return url;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.fish.toucher.service;
+
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point in time by which a unit of fetch work must be done.
+ * <p>
+ * The deadline is bound to the thread running the work and inherited by the threads it starts
+ * (page fetches, hedge requests), so every request of the work shares the one budget:
+ * {@link OnlineBookFetcher} shortens request timeouts to the time left, skips retries that
+ * would not finish in time and fails fast once it has passed.
+ */
+public final class FetchDeadline {
+
+    // Inheritable: FetchExecutor starts a fresh virtual thread per task from the submitting thread
+    private static final InheritableThreadLocal<FetchDeadline> CURRENT = new InheritableThreadLocal<>();
+
+    private final long deadlineNanos;
+
+    private FetchDeadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * A deadline the given budget from now.
+     */
+    public static FetchDeadline after(Duration budget) {
+        return new FetchDeadline(System.nanoTime() + budget.toNanos());
+    }
+
+    /**
+     * The deadline of the work running on this thread, or null if it has none.
+     */
+    static FetchDeadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Run work under this deadline; the previous deadline of the thread is restored afterwards.
+     */
+    public <T> T run(Callable<T> work) throws Exception {
+        FetchDeadline previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return work.call();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    /** Milliseconds left, 0 once passed. */
+    public long remainingMs() {
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime()));
+    }
+
+    public boolean isExpired() {
+        return System.nanoTime() - deadlineNanos >= 0;
+    }
+}
@@ -0,0 +1,81 @@
+package com.fish.toucher.service;
+
+import java.io.IOException;
+import java.net.http.HttpTimeoutException;
+
+/**
+ * Thrown by OnlineBookFetcher when a request does not produce a usable response,
+ * e.g. a non-2xx status or a network failure that survived all retries.
+ * Also reported, not thrown, when a page loaded fine but the source's rule matched nothing on it.
+ */
+public class FetchException extends IOException {
+
+    /** Why the request was given up. */
+    public enum Kind {
+        /** Non-2xx status; see {@link #getStatusCode()}. */
+        HTTP_STATUS,
+        /** Connection, DNS or transfer failure. */
+        NETWORK,
+        /** No response headers within the first-byte budget. */
+        FIRST_BYTE_TIMEOUT,
+        /** Headers arrived, but the body did not complete within the total timeout. */
+        BODY_TIMEOUT,
+        /** Body larger than the rule allows. */
+        TOO_LARGE,
+        /** Content-Type not on the rule's allow-list. */
+        CONTENT_TYPE,
+        /** The deadline of the surrounding work ran out. */
+        DEADLINE,
+        /** Not sent: the source's circuit breaker is open. */
+        CIRCUIT_OPEN,
+        /** The page loaded, but the rule matched nothing on it. */
+        NO_MATCH
+    }
+
+    private final String url;
+    private final int statusCode;
+    private final Kind kind;
+
+    public FetchException(String url, int statusCode, String message) {
+        this(url, statusCode > 0 ? Kind.HTTP_STATUS : Kind.NETWORK, statusCode, message, null);
+    }
+
+    public FetchException(String url, String message, Throwable cause) {
+        this(url, cause instanceof HttpTimeoutException ? Kind.FIRST_BYTE_TIMEOUT : Kind.NETWORK, -1, message, cause);
+    }
+
+    public FetchException(String url, Kind kind, String message) {
+        this(url, kind, -1, message, null);
+    }
+
+    private FetchException(String url, Kind kind, int statusCode, String message, Throwable cause) {
+        super(message, cause);
+        this.url = url;
+        this.kind = kind;
+        this.statusCode = statusCode;
+    }
+
+    public String getUrl() { return url; }
+
+    /** HTTP status of the failed response, or -1 if no response was received. */
+    public int getStatusCode() { return statusCode; }
+
+    public Kind getKind() { return kind; }
+
+    /**
+     * Short explanation for the status bar.
+     */
+    public String getUserMessage() {
+        return switch (kind) {
+            case HTTP_STATUS -> "\u670d\u52a1\u5668\u8fd4\u56de HTTP " + statusCode;
+            case NETWORK -> "\u7f51\u7edc\u9519\u8bef";
+            case FIRST_BYTE_TIMEOUT -> "\u670d\u52a1\u5668\u54cd\u5e94\u8d85\u65f6";
+            case BODY_TIMEOUT -> "\u4e0b\u8f7d\u8d85\u65f6";
+            case TOO_LARGE -> "\u54cd\u5e94\u8fc7\u5927\uff0c\u8bf7\u68c0\u67e5\u4e66\u6e90\u89c4\u5219";
+            case CONTENT_TYPE -> "\u54cd\u5e94\u7c7b\u578b\u4e0d\u7b26\uff0c\u8bf7\u68c0\u67e5\u4e66\u6e90\u89c4\u5219";
+            case DEADLINE -> "\u52a0\u8f7d\u8d85\u65f6";
+            case CIRCUIT_OPEN -> "\u4e66\u6e90\u6682\u65f6\u4e0d\u53ef\u7528";
+            case NO_MATCH -> "\u672a\u5339\u914d\u5230\u5185\u5bb9\uff0c\u8bf7\u68c0\u67e5\u4e66\u6e90\u89c4\u5219";
+        };
+    }
+}
@@ -0,0 +1,153 @@
+package com.fish.toucher.service;
+
+import com.intellij.openapi.diagnostic.Logger;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The plugin's executor for blocking network work: searches, catalog and chapter loads, page and
+ * hedge requests, the hot search refresh. Cache reads and deletions the UI keeps off the EDT run
+ * here too, rather than on the IDE's shared pool. Every task gets its own virtual thread, so a request
+ * waiting 15 s on a slow site parks a few hundred bytes instead of holding a platform thread of
+ * the IDE's shared pool.
+ * <p>
+ * Admission is bounded twice: at most {@link #MAX_RUNNING} tasks run at once (the rest wait for a
+ * slot, which costs a parked virtual thread and nothing more), and at most {@link #MAX_PENDING}
+ * tasks may be waiting or running before new ones are rejected with
+ * {@link RejectedExecutionException}. Worker threads are renamed after the task they run, so
+ * thread dumps show what each one is fetching.
+ */
+public final class FetchExecutor implements Executor {
+
+    private static final Logger LOG = Logger.getInstance(FetchExecutor.class);
+    private static final FetchExecutor INSTANCE = new FetchExecutor();
+
+    private static final String THREAD_PREFIX = "FishToucher-fetch-";
+    /** Tasks running at once; host rate limits still apply to their requests. */
+    private static final int MAX_RUNNING = 256;
+    /** Tasks waiting or running before submissions are rejected. */
+    private static final int MAX_PENDING = 4096;
+
+    private final ExecutorService threads =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(THREAD_PREFIX, 0).factory());
+    private final Semaphore runSlots = new Semaphore(MAX_RUNNING);
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger peakRunning = new AtomicInteger();
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder admissionWaitNanos = new LongAdder();
+
+    private FetchExecutor() {}
+
+    public static FetchExecutor getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Run a task on its own virtual thread.
+     * Cancelling the returned future with {@code mayInterruptIfRunning} interrupts the task, which
+     * aborts an HTTP exchange in progress.
+     *
+     * @param name short label for thread dumps and logs, e.g. "search" or "chapter-list"
+     * @throws RejectedExecutionException if too many tasks are pending
+     */
+    public <T> Future<T> submit(String name, Callable<T> task) {
+        admit(name);
+        FutureTask<T> future = new FutureTask<>(() -> runAdmitted(name, task)) {
+            @Override
+            protected void done() {
+                // Also reached when cancelled before it ever ran
+                pending.decrementAndGet();
+            }
+        };
+        try {
+            threads.execute(future);
+        } catch (RejectedExecutionException e) {
+            future.cancel(false);
+            throw e;
+        }
+        return future;
+    }
+
+    /**
+     * Fire-and-forget variant; a failure is logged since nobody looks at the result.
+     */
+    public Future<?> execute(String name, Runnable task) {
+        return submit(name, () -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                LOG.warn("execute: task '" + name + "' failed", e);
+                throw e;
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Executor view for {@link java.util.concurrent.CompletableFuture} and friends.
+     */
+    @Override
+    public void execute(Runnable command) {
+        execute("task", command);
+    }
+
+    /**
+     * One-line summary of the executor's counters, for logs and diagnostics.
+     */
+    public String describe() {
+        long starts = started.sum();
+        long avgWaitMs = starts > 0 ? admissionWaitNanos.sum() / starts / 1_000_000 : 0;
+        return "running " + running.get() + "/" + MAX_RUNNING + " (peak " + peakRunning.get() + ")"
+                + ", pending " + pending.get()
+                + ", submitted " + submitted.sum()
+                + ", completed " + completed.sum()
+                + ", failed " + failed.sum()
+                + ", rejected " + rejected.sum()
+                + ", avg admission wait " + avgWaitMs + " ms";
+    }
+
+    private void admit(String name) {
+        if (pending.incrementAndGet() > MAX_PENDING) {
+            pending.decrementAndGet();
+            rejected.increment();
+            LOG.warn("submit: rejecting '" + name + "', too many pending tasks: " + describe());
+            throw new RejectedExecutionException("Too many pending fetch tasks (" + MAX_PENDING + ")");
+        }
+        submitted.increment();
+    }
+
+    private <T> T runAdmitted(String name, Callable<T> task) throws Exception {
+        long waitStart = System.nanoTime();
+        runSlots.acquire();
+        admissionWaitNanos.add(System.nanoTime() - waitStart);
+        started.increment();
+        int now = running.incrementAndGet();
+        peakRunning.accumulateAndGet(now, Math::max);
+        Thread thread = Thread.currentThread();
+        thread.setName(THREAD_PREFIX + name);
+        try {
+            return task.call();
+        } catch (Exception e) {
+            failed.increment();
+            throw e;
+        } finally {
+            running.decrementAndGet();
+            runSlots.release();
+            completed.increment();
+        }
+    }
+}
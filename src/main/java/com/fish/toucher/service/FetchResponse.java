@@ -0,0 +1,47 @@
+package com.fish.toucher.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Result of OnlineBookFetcher.fetch: the decompressed body bytes, the charset detected for them,
+ * and what is needed for revalidation. The body is kept as bytes so parsers can decode it
+ * themselves instead of going through a full-size String copy.
+ */
+public class FetchResponse {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final int statusCode;
+    private final byte[] body;
+    private final Charset charset;
+    private final HttpValidators validators;
+
+    public FetchResponse(int statusCode, byte[] body, Charset charset, HttpValidators validators) {
+        this.statusCode = statusCode;
+        this.body = body != null ? body : EMPTY;
+        this.charset = charset != null ? charset : StandardCharsets.UTF_8;
+        this.validators = validators;
+    }
+
+    /** A 304 answer to a conditional request: no body, the cached entry's validators still apply. */
+    static FetchResponse notModified(HttpValidators validators) {
+        return new FetchResponse(304, EMPTY, StandardCharsets.UTF_8, validators);
+    }
+
+    public int getStatusCode() { return statusCode; }
+
+    /** Charset from the BOM, Content-Type, {@code <meta>} or sniffing, in that order. */
+    public Charset getCharset() { return charset; }
+
+    /** The body as a stream, for parsers that decode while reading. */
+    public InputStream openStream() { return new ByteArrayInputStream(body); }
+
+    /** ETag / Last-Modified of the response, or null if the server sent none. */
+    public HttpValidators getValidators() { return validators; }
+
+    /** True if a conditional request was answered with 304 Not Modified. */
+    public boolean isNotModified() { return statusCode == 304; }
+}
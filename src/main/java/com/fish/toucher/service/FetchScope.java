@@ -0,0 +1,142 @@
+package com.fish.toucher.service;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.util.Disposer;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+
+/**
+ * Fetch work owned by a UI component, usually a dialog.
+ * <p>
+ * Each task belongs to a {@link Stage} and runs on {@link FetchExecutor} under a
+ * {@link FetchDeadline} of that stage's budget, which covers every request the stage makes
+ * (all pages, retries and hedges). Starting a task cancels the previous task of the same stage,
+ * e.g. a new search aborts the one still running, and disposing the owner cancels everything.
+ * Cancelling interrupts the task's thread, which aborts its HTTP exchange or body read.
+ * <p>
+ * UI updates posted through {@link #invokeLater} are dropped once their task was superseded or
+ * the scope disposed, so late results never touch a closed dialog.
+ */
+public final class FetchScope implements Disposable {
+
+    /** The task running on this thread, for {@link #invokeLater} and {@link #isCancelled}. */
+    private static final ThreadLocal<Task> CURRENT_TASK = new ThreadLocal<>();
+
+    public enum Stage {
+        SEARCH("search", Duration.ofSeconds(20)),
+        CATALOG("catalog", Duration.ofSeconds(45)),
+        CONTENT("content", Duration.ofSeconds(25));
+
+        private final String label;
+        private final Duration budget;
+
+        Stage(String label, Duration budget) {
+            this.label = label;
+            this.budget = budget;
+        }
+
+        public Duration getBudget() { return budget; }
+    }
+
+    private final Map<Stage, Task> latest = new ConcurrentHashMap<>();
+    private final Set<Task> running = ConcurrentHashMap.newKeySet();
+    private volatile boolean disposed;
+
+    public FetchScope(Disposable parent) {
+        Disposer.register(parent, this);
+    }
+
+    /**
+     * Start the work of a stage, cancelling the previous work of the same stage.
+     */
+    public void launch(Stage stage, Runnable work) {
+        if (disposed) {
+            return;
+        }
+        Task task = new Task();
+        Task previous = latest.put(stage, task);
+        if (previous != null) {
+            previous.cancel();
+        }
+        running.add(task);
+        FetchDeadline deadline = FetchDeadline.after(stage.budget);
+        task.attach(FetchExecutor.getInstance().execute(stage.label, () -> {
+            CURRENT_TASK.set(task);
+            try {
+                deadline.run(() -> {
+                    work.run();
+                    return null;
+                });
+            } catch (Exception e) {
+                // work is a Runnable, so this is unchecked; FetchExecutor logs it
+                throw e instanceof RuntimeException re ? re : new IllegalStateException(e);
+            } finally {
+                CURRENT_TASK.remove();
+                running.remove(task);
+                latest.remove(stage, task);
+            }
+        }));
+    }
+
+    /**
+     * Post a UI update from a task; it is skipped if the task has since been cancelled or the
+     * scope disposed.
+     */
+    public void invokeLater(Runnable update) {
+        Task task = CURRENT_TASK.get();
+        ApplicationManager.getApplication().invokeLater(() -> {
+            if (!disposed && (task == null || !task.cancelled)) {
+                update.run();
+            }
+        });
+    }
+
+    /**
+     * Whether the task running on this thread should stop: superseded, or its owner disposed.
+     */
+    public boolean isCancelled() {
+        Task task = CURRENT_TASK.get();
+        return disposed || (task != null && task.cancelled) || Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * Cancel all work of this scope without disposing it.
+     */
+    public void cancelAll() {
+        for (Task task : running) {
+            task.cancel();
+        }
+    }
+
+    @Override
+    public void dispose() {
+        disposed = true;
+        cancelAll();
+    }
+
+    private static final class Task {
+        private volatile boolean cancelled;
+        private volatile Future<?> future;
+
+        void attach(Future<?> future) {
+            this.future = future;
+            // cancel() may have run before the future existed
+            if (cancelled) {
+                future.cancel(true);
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            Future<?> f = future;
+            if (f != null) {
+                f.cancel(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.fish.toucher.service;
+
+import com.fish.toucher.model.BookSource;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Per-host throttle: a token bucket for the request rate plus a cap on the number of concurrent
+ * requests. A host can also be paused, which is how a 429 / Retry-After from one request slows
+ * down every other request to it.
+ * <p>
+ * There is one limiter per host for the whole IDE. Several sources can point at the same host
+ * with different rate limits; each source's limits are remembered, and the strictest value of
+ * each applies. Editing a source updates its entry in place, so the bucket and the requests in
+ * flight are never reset; a deleted or edited source's entries are dropped with
+ * {@link #removeSource}, so limits it no longer asks for stop applying.
+ */
+public class HostRateLimiter {
+
+    private static final Map<String, HostRateLimiter> LIMITERS = new ConcurrentHashMap<>();
+
+    private record Limits(double permitsPerSecond, int burst, int maxConcurrent) {
+    }
+
+    // All fields guarded by this
+    private final Map<String, Limits> limitsBySource = new HashMap<>();
+    private double permitsPerSecond;
+    private int burst;
+    private int maxConcurrent;
+    private int inFlight;
+
+    private double tokens;
+    private long lastRefillNanos;
+    /** Not paused while this is in the past; starts at now, since nanoTime has no fixed origin. */
+    private long pausedUntilNanos;
+
+    private HostRateLimiter() {
+        lastRefillNanos = System.nanoTime();
+        pausedUntilNanos = lastRefillNanos;
+    }
+
+    /**
+     * Get the limiter for a host, registering the limits a source wants for it.
+     */
+    public static HostRateLimiter forHost(String host, String sourceName, BookSource.RateLimit limit) {
+        Limits limits = new Limits(Math.max(0.1, limit.getPermitsPerSecond()),
+                Math.max(1, limit.getBurst()), Math.max(1, limit.getMaxConcurrent()));
+        String key = host != null ? host.toLowerCase() : "";
+        HostRateLimiter limiter = LIMITERS.computeIfAbsent(key, k -> new HostRateLimiter());
+        limiter.register(sourceName != null ? sourceName : "", limits);
+        return limiter;
+    }
+
+    /**
+     * Forget the limits a source registered on any host, e.g. after it was deleted or edited.
+     * An edited source registers its new limits again with its next request.
+     */
+    public static void removeSource(String sourceName) {
+        String name = sourceName != null ? sourceName : "";
+        for (HostRateLimiter limiter : LIMITERS.values()) {
+            limiter.unregister(name);
+        }
+    }
+
+    private synchronized void register(String sourceName, Limits limits) {
+        // burst is at least 1 once any limits were applied
+        boolean first = burst == 0;
+        if (limits.equals(limitsBySource.put(sourceName, limits))) {
+            return;
+        }
+        applyStrictest(first);
+    }
+
+    private synchronized void unregister(String sourceName) {
+        // With no source left the last limits stay until one registers again
+        if (limitsBySource.remove(sourceName) != null && !limitsBySource.isEmpty()) {
+            applyStrictest(false);
+        }
+    }
+
+    private void applyStrictest(boolean first) {
+        permitsPerSecond = Double.MAX_VALUE;
+        burst = Integer.MAX_VALUE;
+        maxConcurrent = Integer.MAX_VALUE;
+        for (Limits l : limitsBySource.values()) {
+            permitsPerSecond = Math.min(permitsPerSecond, l.permitsPerSecond());
+            burst = Math.min(burst, l.burst());
+            maxConcurrent = Math.min(maxConcurrent, l.maxConcurrent());
+        }
+        tokens = first ? burst : Math.min(tokens, burst);
+        // A higher cap may let waiting requests through
+        notifyAll();
+    }
+
+    /**
+     * Concurrent requests currently let through: the strictest maxConcurrent of the host's sources.
+     */
+    public synchronized int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    /**
+     * Block until both a concurrency slot and a rate token are available. The returned permit
+     * holds the slot until it is released, which should be once the response body has been read
+     * or abandoned, since the body is the slow part of a request.
+     */
+    public Permit acquire() throws InterruptedException {
+        synchronized (this) {
+            while (inFlight >= maxConcurrent) {
+                wait();
+            }
+            inFlight++;
+        }
+        try {
+            long waitNanos;
+            while ((waitNanos = reserveToken()) > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            }
+        } catch (InterruptedException e) {
+            releaseSlot();
+            throw e;
+        }
+        return new Permit();
+    }
+
+    private synchronized void releaseSlot() {
+        inFlight--;
+        notifyAll();
+    }
+
+    /**
+     * Stop handing out tokens for the given time, e.g. after a 429 with Retry-After.
+     */
+    public synchronized void pause(long millis) {
+        long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        if (until - pausedUntilNanos > 0) {
+            pausedUntilNanos = until;
+        }
+    }
+
+    /**
+     * Take a token if one is available.
+     * @return 0 if a token was taken, otherwise the nanos to wait before trying again
+     */
+    private synchronized long reserveToken() {
+        long now = System.nanoTime();
+        if (pausedUntilNanos - now > 0) {
+            return pausedUntilNanos - now;
+        }
+        double elapsedSeconds = (now - lastRefillNanos) / 1_000_000_000.0;
+        tokens = Math.min(burst, tokens + elapsedSeconds * permitsPerSecond);
+        lastRefillNanos = now;
+        if (tokens >= 1.0) {
+            tokens -= 1.0;
+            return 0;
+        }
+        return (long) ((1.0 - tokens) / permitsPerSecond * 1_000_000_000L);
+    }
+
+    /**
+     * A concurrency slot taken by {@link #acquire}. Releasing it more than once has no effect,
+     * so every path that ends a request may release it.
+     */
+    public final class Permit {
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit() {}
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                releaseSlot();
+            }
+        }
+    }
+}
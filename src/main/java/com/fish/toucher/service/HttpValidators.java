@@ -0,0 +1,43 @@
+package com.fish.toucher.service;
+
+import java.net.http.HttpHeaders;
+
+/**
+ * Response validators (ETag / Last-Modified) kept next to a cached response,
+ * so the response can later be revalidated with a conditional request.
+ */
+public class HttpValidators {
+
+    private String etag;
+    private String lastModified;
+
+    public HttpValidators() {
+    }
+
+    public HttpValidators(String etag, String lastModified) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Read the validators of a response, or null if the server sent none.
+     */
+    public static HttpValidators from(HttpHeaders headers) {
+        String etag = headers.firstValue("ETag").orElse(null);
+        String lastModified = headers.firstValue("Last-Modified").orElse(null);
+        if (etag == null && lastModified == null) {
+            return null;
+        }
+        return new HttpValidators(etag, lastModified);
+    }
+
+    public String getEtag() { return etag; }
+    public void setEtag(String etag) { this.etag = etag; }
+
+    public String getLastModified() { return lastModified; }
+    public void setLastModified(String lastModified) { this.lastModified = lastModified; }
+
+    public boolean isEmpty() {
+        return (etag == null || etag.isEmpty()) && (lastModified == null || lastModified.isEmpty());
+    }
+}
@@ -0,0 +1,124 @@
+package com.fish.toucher.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Recent failures of catalogs and chapters, by source and URL, so one that just failed is not
+ * requested again right away: asking for it again within the TTL of its failure class returns the
+ * same error without touching the network.
+ * <p>
+ * The TTL depends on how likely the failure is to go away by itself: network errors are retried
+ * after seconds, a missing page or a rule that matched nothing only after minutes. Saving or
+ * deleting a source drops its entries, since the edit may be the fix. The cache holds at most
+ * {@link #MAX_ENTRIES} entries, the least recently used going first, and is not persisted.
+ * <p>
+ * Complements the per-source circuit breaker in {@link SourceHealthTracker}: a 404 for one
+ * chapter does not trip it, but is remembered here.
+ */
+final class NegativeCache {
+
+    static final int MAX_ENTRIES = 512;
+
+    private static final NegativeCache INSTANCE = new NegativeCache(System::currentTimeMillis);
+
+    enum FailureClass {
+        /** Connection failures and timeouts; often gone a moment later. */
+        NETWORK(TimeUnit.SECONDS.toMillis(30)),
+        /** 5xx, 429 or 403: the site is struggling or refusing us. */
+        SERVER(TimeUnit.MINUTES.toMillis(2)),
+        /** Other 4xx, e.g. a 404: the request will not work as it is. */
+        MISSING(TimeUnit.MINUTES.toMillis(10)),
+        /** Rejected by the rule's limits, or the rule matched nothing; only an edit fixes it. */
+        RULE(TimeUnit.MINUTES.toMillis(10));
+
+        final long ttlMs;
+
+        FailureClass(long ttlMs) {
+            this.ttlMs = ttlMs;
+        }
+
+        /**
+         * Class of a failure, or null if it says nothing about the URL: our own deadline ran out,
+         * or the circuit breaker, which has its own cooldown, kept the request from being sent.
+         */
+        static FailureClass of(FetchException e) {
+            return switch (e.getKind()) {
+                case HTTP_STATUS -> e.getStatusCode() >= 500 || e.getStatusCode() == 429 || e.getStatusCode() == 403
+                        ? SERVER : MISSING;
+                case NETWORK, FIRST_BYTE_TIMEOUT, BODY_TIMEOUT -> NETWORK;
+                case TOO_LARGE, CONTENT_TYPE, NO_MATCH -> RULE;
+                case DEADLINE, CIRCUIT_OPEN -> null;
+            };
+        }
+    }
+
+    private record Entry(String sourceName, FetchException error, long expiresAt) {
+    }
+
+    private final LongSupplier clock;
+    /** Keyed by source name and URL; in access order for the LRU bound. */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    static NegativeCache getInstance() {
+        return INSTANCE;
+    }
+
+    /** @param clock current time in milliseconds; a fake one in tests */
+    NegativeCache(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * The error a URL of a source failed with recently, or null if it did not or the failure has
+     * expired.
+     */
+    synchronized FetchException lookup(String sourceName, String url) {
+        String key = key(sourceName, url);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (clock.getAsLong() >= entry.expiresAt()) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.error();
+    }
+
+    /** Remember a failure; failures without a {@link FailureClass} are ignored. */
+    synchronized void record(String sourceName, String url, FetchException error) {
+        FailureClass failureClass = FailureClass.of(error);
+        if (failureClass == null) {
+            return;
+        }
+        entries.put(key(sourceName, url), new Entry(sourceName, error,
+                clock.getAsLong() + failureClass.ttlMs));
+    }
+
+    /** Forget the failures of a source, e.g. after it was edited. */
+    synchronized void invalidate(String sourceName) {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().sourceName().equals(sourceName)) {
+                it.remove();
+            }
+        }
+    }
+
+    synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    private static String key(String sourceName, String url) {
+        return sourceName + '\n' + url;
+    }
+}
@@ -4,25 +4,47 @@ import com.fish.toucher.model.BookSource;
 import com.fish.toucher.model.ChapterInfo;
 import com.fish.toucher.model.SearchResult;
 import com.intellij.openapi.diagnostic.Logger;
-import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.DocumentContext;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.ConnectException;
 import java.net.Proxy;
 import java.net.ProxySelector;
 import java.net.URI;
 import java.net.URLEncoder;
+import java.net.UnknownHostException;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Core HTTP + parsing engine for online book sources.
@@ -34,44 +56,155 @@ public class OnlineBookFetcher {
     private static final String DEFAULT_UA =
             "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/120.0.0.0 Safari/537.36";
 
+    private static final long RETRY_BASE_DELAY_MS = 500;
+    private static final long MAX_BACKOFF_MS = 10_000;
+    /** Retry-After longer than this is not waited out; the request fails instead. */
+    private static final long MAX_RETRY_AFTER_MS = 30_000;
+
+    /** Upper bound on the pages of one catalog or chapter, against pagers that never end. */
+    private static final int MAX_PAGES = 200;
+    /**
+     * Pages of a catalog or chapter requested at once, further capped by the host's maxConcurrent;
+     * the host rate limit still applies on top.
+     */
+    private static final int PAGE_FETCH_PARALLELISM = 4;
+    /**
+     * In-flight requests shared between concurrent callers, e.g. a prefetch of the next chapter
+     * and the user opening it, so the same resource is never requested twice at the same time.
+     */
+    private static final SingleFlight<FetchResponse> FETCHES = new SingleFlight<>();
+    private static final SingleFlight<List<String>> STREAMED_CONTENT = new SingleFlight<>();
+
+    /** Wait before hedging while a source has no latency measurements yet. */
+    private static final long DEFAULT_HEDGE_DELAY_MS = 3_000;
+    /** Never hedge sooner than this, even for a source whose p95 is tiny. */
+    private static final long MIN_HEDGE_DELAY_MS = 300;
+
+    /** Why the last public call of this fetcher came back empty, if a request failed. */
+    private volatile FetchException lastError;
+
+    /**
+     * The failure behind the last empty result of {@link #search}, {@link #searchAll},
+     * {@link #fetchChapterList}, {@link #refreshChapterList} or {@link #fetchContent}, or null if
+     * that call did not fail. A catalog or chapter whose rule matched nothing is reported as
+     * {@link FetchException.Kind#NO_MATCH}; an empty search result is not a failure.
+     */
+    public FetchException getLastError() {
+        return lastError;
+    }
+
     /**
      * Search for books using the given source and keyword.
+     * GET searches are cached briefly and revalidated with a conditional request once stale.
      */
     public List<SearchResult> search(BookSource source, String keyword) {
-        List<SearchResult> results = new ArrayList<>();
+        lastError = null;
         try {
             String encodedKeyword = URLEncoder.encode(keyword, StandardCharsets.UTF_8);
-            BookSource.SearchRule searchRule = source.getSearchRule();
-            String url = searchRule.getUrl().replace("{{keyword}}", encodedKeyword);
-            String method = searchRule.getMethod() != null ? searchRule.getMethod() : "GET";
-
-            String body = fetch(url, method, source.getHeaders());
-            String ruleType = searchRule.getRuleType() != null ? searchRule.getRuleType() : "html";
-
-            if ("json".equalsIgnoreCase(ruleType)) {
-                List<Map<String, Object>> items = JsonPath.read(body, searchRule.getList());
-                for (Map<String, Object> item : items) {
-                    SearchResult sr = new SearchResult();
-                    sr.setName(extractJsonValue(item, searchRule.getName()));
-                    sr.setAuthor(extractJsonValue(item, searchRule.getAuthor()));
-                    sr.setBookUrl(resolveUrl(url, extractJsonValue(item, searchRule.getBookUrl())));
-                    sr.setCoverUrl(extractJsonValue(item, searchRule.getCoverUrl()));
-                    results.add(sr);
-                }
-            } else {
-                Document doc = Jsoup.parse(body, url);
-                Elements elements = doc.select(searchRule.getList());
-                for (Element el : elements) {
-                    SearchResult sr = new SearchResult();
-                    sr.setName(extractHtml(el, searchRule.getName()));
-                    sr.setAuthor(extractHtml(el, searchRule.getAuthor()));
-                    sr.setBookUrl(resolveUrl(url, extractHtml(el, searchRule.getBookUrl())));
-                    sr.setCoverUrl(extractHtml(el, searchRule.getCoverUrl()));
-                    results.add(sr);
+            CompiledSource compiled = CompiledSource.of(source);
+            CompiledSource.SearchPlan plan = compiled.search();
+            String url = plan.url.expand("keyword", encodedKeyword);
+            String method = plan.method;
+
+            if ("POST".equalsIgnoreCase(method)) {
+                return parseSearchResults(compiled, url, fetch(source, url, method, plan.limits));
+            }
+
+            ChapterCacheManager cacheManager = ChapterCacheManager.getInstance();
+            String cacheKey = compiled.searchCacheKey(url);
+            List<SearchResult> cached = cacheManager.getCachedSearchResults(cacheKey);
+            if (cached != null) {
+                return cached;
+            }
+            FetchResponse response = fetch(source, url, method, plan.limits, cacheManager.getSearchValidators(cacheKey));
+            if (response.isNotModified()) {
+                cached = cacheManager.touchSearchResults(cacheKey);
+                if (cached != null) {
+                    return cached;
                 }
+                response = fetch(source, url, method, plan.limits);
+            }
+            List<SearchResult> results = parseSearchResults(compiled, url, response);
+            if (!results.isEmpty()) {
+                cacheManager.cacheSearchResults(cacheKey, results, response.getValidators());
             }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ArrayList<>();
         } catch (Exception e) {
+            failed(e);
             LOG.warn("search failed for keyword '" + keyword + "': " + e.getMessage(), e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Search several sources at once. Results are grouped by source, healthiest source first
+     * (see {@link SourceHealthTracker#sortByHealth}); sources whose circuit is open are skipped.
+     */
+    public List<SearchResult> searchAll(List<BookSource> sources, String keyword) {
+        lastError = null;
+        SourceHealthTracker health = SourceHealthTracker.getInstance();
+        List<Future<List<SearchResult>>> futures = new ArrayList<>();
+        List<OnlineBookFetcher> fetchers = new ArrayList<>();
+        for (BookSource source : health.sortByHealth(sources)) {
+            if (health.isCircuitOpen(source.getName())) {
+                LOG.info("searchAll: skipping '" + source.getName() + "', circuit open");
+                continue;
+            }
+            // One fetcher per source, so each search keeps its own error
+            OnlineBookFetcher fetcher = new OnlineBookFetcher();
+            fetchers.add(fetcher);
+            futures.add(FetchExecutor.getInstance().submit("search", () -> fetcher.search(source, keyword)));
+        }
+        List<SearchResult> results = new ArrayList<>();
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                results.addAll(futures.get(i).get());
+                if (lastError == null) {
+                    lastError = fetchers.get(i).getLastError();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            LOG.warn("searchAll failed for keyword '" + keyword + "': " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            // Only does something when this search was cancelled
+            futures.forEach(future -> future.cancel(true));
+        }
+        return results;
+    }
+
+    private List<SearchResult> parseSearchResults(CompiledSource compiled, String url, FetchResponse response) throws IOException {
+        CompiledSource.SearchPlan plan = compiled.search();
+        List<SearchResult> results = new ArrayList<>();
+        URI base = baseUriFor(compiled, url);
+
+        if (plan.json) {
+            DocumentContext json = compiled.parseJson(response.openStream(), response.getCharset());
+            for (Object item : compiled.readJsonList(json, plan.listPath)) {
+                SearchResult sr = new SearchResult();
+                sr.setName(compiled.extract(plan.name, item));
+                sr.setAuthor(compiled.extract(plan.author, item));
+                sr.setBookUrl(CompiledSource.resolveUrl(base, compiled.extract(plan.bookUrl, item)));
+                sr.setCoverUrl(compiled.extract(plan.coverUrl, item));
+                sr.setSourceName(compiled.source().getName());
+                results.add(sr);
+            }
+        } else {
+            Document doc = parseHtml(response, url);
+            Elements elements = doc.select(plan.list);
+            for (Element el : elements) {
+                SearchResult sr = new SearchResult();
+                sr.setName(plan.name.extract(el));
+                sr.setAuthor(plan.author.extract(el));
+                sr.setBookUrl(CompiledSource.resolveUrl(base, plan.bookUrl.extract(el)));
+                sr.setCoverUrl(plan.coverUrl.extract(el));
+                sr.setSourceName(compiled.source().getName());
+                results.add(sr);
+            }
         }
         return results;
     }
@@ -80,230 +213,929 @@ public class OnlineBookFetcher {
      * Fetch the chapter list for a book.
      */
     public List<ChapterInfo> fetchChapterList(BookSource source, String bookUrl) {
-        List<ChapterInfo> chapters = new ArrayList<>();
+        lastError = null;
+        if (failedRecently(source, bookUrl)) {
+            return new ArrayList<>();
+        }
         try {
-            BookSource.ChapterRule chapterRule = source.getChapterRule();
-            String url = chapterRule.getUrl().replace("{{bookUrl}}", bookUrl);
-            String method = chapterRule.getMethod() != null ? chapterRule.getMethod() : "GET";
-
-            String body = fetch(url, method, source.getHeaders());
-            String ruleType = chapterRule.getRuleType() != null ? chapterRule.getRuleType() : "html";
-
-            if ("json".equalsIgnoreCase(ruleType)) {
-                List<Map<String, Object>> items = JsonPath.read(body, chapterRule.getList());
-                for (int i = 0; i < items.size(); i++) {
-                    Map<String, Object> item = items.get(i);
-                    ChapterInfo ci = new ChapterInfo();
-                    ci.setIndex(i);
-                    ci.setTitle(extractJsonValue(item, chapterRule.getName()));
-                    ci.setUrl(resolveUrl(url, extractJsonValue(item, chapterRule.getChapterUrl())));
-                    chapters.add(ci);
-                }
-            } else {
-                Document doc = Jsoup.parse(body, url);
-                Elements elements = doc.select(chapterRule.getList());
-                for (int i = 0; i < elements.size(); i++) {
-                    Element el = elements.get(i);
-                    ChapterInfo ci = new ChapterInfo();
-                    ci.setIndex(i);
-                    ci.setTitle(extractHtml(el, chapterRule.getName()));
-                    ci.setUrl(resolveUrl(url, extractHtml(el, chapterRule.getChapterUrl())));
-                    chapters.add(ci);
-                }
+            CompiledSource compiled = CompiledSource.of(source);
+            CompiledSource.ChapterPlan plan = compiled.chapter();
+            String url = plan.url.expand("bookUrl", bookUrl);
+
+            List<ChapterInfo> chapters = fetchChapterPages(source, compiled, bookUrl, url, fetch(source, url, plan.method, plan.limits));
+            if (chapters.isEmpty()) {
+                rememberEmpty(source, bookUrl, "chapter");
             }
+            return chapters;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ArrayList<>();
         } catch (Exception e) {
+            failed(e);
+            rememberFailure(source, bookUrl);
             LOG.warn("fetchChapterList failed for bookUrl '" + bookUrl + "': " + e.getMessage(), e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Re-fetch the chapter list of an expired cache entry and store the result incrementally.
+     * When the cached list has validators, the request is conditional: a 304 only
+     * refreshes the cache TTL, without downloading or parsing the catalog again.
+     * Paged catalogs are always fetched in full, since new chapters land on the last page
+     * while the first one stays unchanged.
+     * <p>
+     * The new list is diffed against the cached one by chapter URL: new chapters are appended,
+     * and if chapters were renumbered, cached content and reading progress follow their chapters.
+     *
+     * @return the diff against the cached list; an empty unchanged diff if the refresh failed
+     */
+    public ChapterListDiff refreshChapterList(BookSource source, String bookUrl) {
+        lastError = null;
+        if (failedRecently(source, bookUrl)) {
+            return ChapterListDiff.unchanged(new ArrayList<>());
+        }
+        try {
+            CompiledSource compiled = CompiledSource.of(source);
+            CompiledSource.ChapterPlan plan = compiled.chapter();
+            String url = plan.url.expand("bookUrl", bookUrl);
+            String method = plan.method;
+
+            ChapterCacheManager cacheManager = ChapterCacheManager.getInstance();
+            boolean conditional = !"POST".equalsIgnoreCase(method) && !plan.paging.isPaged();
+            HttpValidators validators = conditional ? cacheManager.getChapterListValidators(bookUrl, compiled.rulesTag()) : null;
+            FetchResponse response = fetch(source, url, method, plan.limits, validators);
+            if (response.isNotModified()) {
+                List<ChapterInfo> cached = cacheManager.touchChapterList(bookUrl);
+                if (cached != null) {
+                    LOG.info("refreshChapterList: not modified, reusing cached list for " + bookUrl);
+                    return ChapterListDiff.unchanged(cached);
+                }
+                response = fetch(source, url, method, plan.limits);
+            }
+            List<ChapterInfo> chapters = fetchChapterPages(source, compiled, bookUrl, url, response);
+            if (chapters.isEmpty()) {
+                rememberEmpty(source, bookUrl, "chapter");
+                return ChapterListDiff.unchanged(chapters);
+            }
+            ChapterListDiff diff = ChapterListDiff.compute(cacheManager.getStaleChapterList(bookUrl), chapters);
+            cacheManager.applyChapterListDiff(bookUrl, diff, response.getValidators(), compiled.rulesTag());
+            if (!diff.isAppendOnly()) {
+                BookshelfManager.getInstance().remapProgress(bookUrl, diff);
+            }
+            LOG.info("refreshChapterList: " + (diff.isAppendOnly()
+                    ? diff.getAdded().size() + " new chapter(s)"
+                    : "catalog renumbered, " + diff.getMoved().size() + " moved, " + diff.getRemoved().size() + " removed")
+                    + " for " + bookUrl);
+            return diff;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ChapterListDiff.unchanged(new ArrayList<>());
+        } catch (Exception e) {
+            failed(e);
+            rememberFailure(source, bookUrl);
+            LOG.warn("refreshChapterList failed for bookUrl '" + bookUrl + "': " + e.getMessage(), e);
+            return ChapterListDiff.unchanged(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Parse the first catalog page and, for paged catalogs, the pages after it, numbering the
+     * stitched list from 0.
+     */
+    private List<ChapterInfo> fetchChapterPages(BookSource source, CompiledSource compiled, String bookUrl,
+                                                String url, FetchResponse first) throws Exception {
+        CompiledSource.ChapterPlan plan = compiled.chapter();
+        List<ChapterInfo> chapters = collectPages(source, plan.paging, plan.method, plan.limits, "bookUrl", bookUrl, url,
+                parseChapterPage(compiled, url, first), (pageUrl, response) -> parseChapterPage(compiled, pageUrl, response));
+        for (int i = 0; i < chapters.size(); i++) {
+            chapters.get(i).setIndex(i);
         }
         return chapters;
     }
 
+    private ParsedPage<ChapterInfo> parseChapterPage(CompiledSource compiled, String url, FetchResponse response) throws IOException {
+        CompiledSource.ChapterPlan plan = compiled.chapter();
+        List<ChapterInfo> chapters = new ArrayList<>();
+        URI base = baseUriFor(compiled, url);
+
+        if (plan.json) {
+            DocumentContext json = compiled.parseJson(response.openStream(), response.getCharset());
+            for (Object item : compiled.readJsonList(json, plan.listPath)) {
+                ChapterInfo ci = new ChapterInfo();
+                ci.setTitle(compiled.extract(plan.name, item));
+                ci.setUrl(CompiledSource.resolveUrl(base, compiled.extract(plan.chapterUrl, item)));
+                chapters.add(ci);
+            }
+            return ParsedPage.of(chapters, compiled, plan.paging, base, json.json());
+        }
+        Document doc = parseHtml(response, url);
+        for (Element el : doc.select(plan.list)) {
+            ChapterInfo ci = new ChapterInfo();
+            ci.setTitle(plan.name.extract(el));
+            ci.setUrl(CompiledSource.resolveUrl(base, plan.chapterUrl.extract(el)));
+            chapters.add(ci);
+        }
+        return ParsedPage.of(chapters, plan.paging, base, doc);
+    }
+
     /**
      * Fetch the content of a chapter, returning lines of text.
      */
     public List<String> fetchContent(BookSource source, String chapterUrl) {
+        lastError = null;
+        if (failedRecently(source, chapterUrl)) {
+            return Collections.emptyList();
+        }
         try {
-            BookSource.ContentRule contentRule = source.getContentRule();
-            String url = contentRule.getUrl().replace("{{chapterUrl}}", chapterUrl);
-            String method = contentRule.getMethod() != null ? contentRule.getMethod() : "GET";
-
-            String body = fetch(url, method, source.getHeaders());
-            String ruleType = contentRule.getRuleType() != null ? contentRule.getRuleType() : "html";
-
-            String text;
-            if ("json".equalsIgnoreCase(ruleType)) {
-                String raw = JsonPath.read(body, contentRule.getContent());
-                text = Jsoup.parse(raw).text();
+            CompiledSource compiled = CompiledSource.of(source);
+            String mirrorUrl = compiled.mirrorUrl(chapterUrl);
+            BookSource mirror = mirrorUrl != null ? findMirror(source) : null;
+            List<String> lines = mirror != null
+                    ? fetchContentHedged(source, chapterUrl, mirror, mirrorUrl)
+                    : fetchContentFrom(source, chapterUrl);
+            if (lines.isEmpty()) {
+                rememberEmpty(source, chapterUrl, "content");
             } else {
-                Document doc = Jsoup.parse(body, url);
-                // Remove purify selectors (ads, scripts, etc.)
-                if (contentRule.getPurify() != null) {
-                    for (String purifySelector : contentRule.getPurify()) {
-                        doc.select(purifySelector).remove();
-                    }
-                }
-                Element contentEl = doc.selectFirst(contentRule.getContent());
-                if (contentEl == null) {
-                    LOG.warn("fetchContent: content selector matched nothing for url: " + url);
-                    return Collections.emptyList();
-                }
-                // Convert <br> and <p> tags to newlines before extracting text
-                contentEl.select("br").after("\\n");
-                contentEl.select("p").before("\\n");
-                text = contentEl.text().replace("\\n", "\n");
-            }
-
-            // Split by newlines, trim, filter empty
-            List<String> lines = new ArrayList<>();
-            for (String line : text.split("\n")) {
-                String trimmed = line.trim();
-                if (!trimmed.isEmpty()) {
-                    lines.add(trimmed);
-                }
+                // The racer that lost may have failed; the chapter was loaded all the same
+                lastError = null;
             }
             return lines;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Collections.emptyList();
         } catch (Exception e) {
+            failed(e);
+            rememberFailure(source, chapterUrl);
             LOG.warn("fetchContent failed for chapterUrl '" + chapterUrl + "': " + e.getMessage(), e);
             return Collections.emptyList();
         }
     }
 
+    private List<String> fetchContentFrom(BookSource source, String chapterUrl) throws Exception {
+        CompiledSource compiled = CompiledSource.of(source);
+        CompiledSource.ContentPlan plan = compiled.content();
+        String url = plan.url.expand("chapterUrl", chapterUrl);
+        String method = plan.method;
+
+        if (plan.stream) {
+            return STREAMED_CONTENT.execute(requestKey(source, method, url, null), () -> streamContent(source, plan, url));
+        }
+
+        ParsedPage<String> first = parseContentPage(compiled, url, fetch(source, url, method, plan.limits));
+        if (first.items.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return collectPages(source, plan.paging, method, plan.limits, "chapterUrl", chapterUrl, url, first,
+                (pageUrl, response) -> parseContentPage(compiled, pageUrl, response));
+    }
+
+    /**
+     * Hedged fetch: ask the primary source first, and if it has not answered by its usual p95
+     * latency, ask the mirror too. The first non-empty result wins and the other request is
+     * interrupted. Only the slowest few percent of chapters cost a second request; a primary that
+     * fails outright falls back to the mirror immediately.
+     */
+    private List<String> fetchContentHedged(BookSource source, String chapterUrl,
+                                            BookSource mirror, String mirrorUrl) throws Exception {
+        ExecutorCompletionService<List<String>> race = new ExecutorCompletionService<>(FetchExecutor.getInstance());
+        Future<List<String>> primary = race.submit(() -> fetchContentFrom(source, chapterUrl));
+        Future<List<String>> hedge = null;
+        try {
+            long delayMs = hedgeDelayMs(source);
+            FetchDeadline deadline = FetchDeadline.current();
+            if (deadline != null) {
+                // Leave the mirror at least half of what is left
+                delayMs = Math.min(delayMs, deadline.remainingMs() / 2);
+            }
+            Future<List<String>> done = race.poll(delayMs, TimeUnit.MILLISECONDS);
+            if (done != null) {
+                List<String> lines = resultOf(done, source);
+                return !lines.isEmpty() ? lines : fetchContentFrom(mirror, mirrorUrl);
+            }
+
+            LOG.info("fetchContent: '" + source.getName() + "' slower than " + delayMs
+                    + " ms, hedging with mirror '" + mirror.getName() + "'");
+            hedge = race.submit(() -> fetchContentFrom(mirror, mirrorUrl));
+            for (int i = 0; i < 2; i++) {
+                Future<List<String>> next = race.take();
+                List<String> lines = resultOf(next, next == primary ? source : mirror);
+                if (!lines.isEmpty()) {
+                    if (next == hedge) {
+                        LOG.info("fetchContent: mirror '" + mirror.getName() + "' won for " + chapterUrl);
+                    }
+                    return lines;
+                }
+            }
+            return Collections.emptyList();
+        } finally {
+            primary.cancel(true);
+            if (hedge != null) {
+                hedge.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * The mirror source named by the source's mirror rule, if it exists, is enabled and is not
+     * itself known to be down.
+     */
+    private static BookSource findMirror(BookSource source) {
+        String name = source.getMirror().getSource();
+        if (name.equals(source.getName())) {
+            return null;
+        }
+        for (BookSource candidate : BookSourceManager.getInstance().getEnabledSources()) {
+            if (name.equals(candidate.getName())) {
+                return SourceHealthTracker.getInstance().isCircuitOpen(name) ? null : candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * How long to wait for the primary before hedging: its p95 latency, or a fixed guess
+     * until enough requests have been measured.
+     */
+    private static long hedgeDelayMs(BookSource source) {
+        long p95 = SourceHealthTracker.getInstance().latencyPercentile(source.getName(), 95);
+        if (p95 < 0) {
+            return DEFAULT_HEDGE_DELAY_MS;
+        }
+        return Math.max(MIN_HEDGE_DELAY_MS, p95);
+    }
+
+    /**
+     * The lines of a finished racer, or an empty list if it failed.
+     */
+    private List<String> resultOf(Future<List<String>> future, BookSource source) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            failed(e.getCause());
+            LOG.info("fetchContent: '" + source.getName() + "' failed: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (CancellationException e) {
+            // cancelled racers have no result
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Parse while downloading; the rest of the page is never read once the content closes.
+     */
+    private List<String> streamContent(BookSource source, CompiledSource.ContentPlan plan, String url) throws Exception {
+        HttpResponse<InputStream> response = execute(source, url, plan.method, plan.limits, null);
+        Element contentEl;
+        try (Reader reader = openBodyReader(source, url, plan.limits, response)) {
+            contentEl = StreamingContentExtractor.extract(reader, url, plan);
+        } catch (IOException e) {
+            throw BoundedBodySubscriber.unwrap(e);
+        }
+        if (contentEl == null) {
+            LOG.warn("fetchContent: content selector matched nothing for url: " + url);
+            return Collections.emptyList();
+        }
+        return splitLines(contentText(contentEl));
+    }
+
+    private ParsedPage<String> parseContentPage(CompiledSource compiled, String url, FetchResponse response) throws IOException {
+        CompiledSource.ContentPlan plan = compiled.content();
+        URI base = baseUriFor(compiled, url);
+
+        if (plan.json) {
+            DocumentContext json = compiled.parseJson(response.openStream(), response.getCharset());
+            String raw = compiled.readJsonString(json, plan.contentPath);
+            return ParsedPage.of(splitLines(Jsoup.parse(raw).text()), compiled, plan.paging, base, json.json());
+        }
+        Document doc = parseHtml(response, url);
+        // Read the pager first: purify rules often remove the navigation it lives in
+        ParsedPage<String> paging = ParsedPage.of(Collections.emptyList(), plan.paging, base, doc);
+        // Remove purify selectors (ads, scripts, etc.)
+        if (plan.purify != null) {
+            doc.select(plan.purify).remove();
+        }
+        Element contentEl = doc.selectFirst(plan.content);
+        if (contentEl == null) {
+            LOG.warn("fetchContent: content selector matched nothing for url: " + url);
+            return paging;
+        }
+        return new ParsedPage<>(splitLines(contentText(contentEl)), paging.nextUrl, paging.pageCount);
+    }
+
+    /**
+     * Split by newlines, trim, filter empty.
+     */
+    private static List<String> splitLines(String text) {
+        List<String> lines = new ArrayList<>();
+        for (String line : text.split("\n")) {
+            String trimmed = line.trim();
+            if (!trimmed.isEmpty()) {
+                lines.add(trimmed);
+            }
+        }
+        return lines;
+    }
+
+    // --- Paging ---
+
+    @FunctionalInterface
+    private interface PageParser<T> {
+        ParsedPage<T> parse(String url, FetchResponse response) throws IOException;
+    }
+
+    /**
+     * Items of one page plus what it says about the pages after it.
+     */
+    private static final class ParsedPage<T> {
+        final List<T> items;
+        /** Absolute URL of the next page, or null. */
+        final String nextUrl;
+        /** Total number of pages, or 0 if unknown. */
+        final int pageCount;
+
+        ParsedPage(List<T> items, String nextUrl, int pageCount) {
+            this.items = items;
+            this.nextUrl = nextUrl;
+            this.pageCount = pageCount;
+        }
+
+        static <T> ParsedPage<T> of(List<T> items, CompiledSource.PagingPlan paging, URI base, Element doc) {
+            String next = paging.nextPage != null ? CompiledSource.resolveUrl(base, paging.nextPage.extract(doc)) : null;
+            int count = paging.pageCount != null ? lastNumber(paging.pageCount.extract(doc)) : 0;
+            return new ParsedPage<>(items, next, count);
+        }
+
+        static <T> ParsedPage<T> of(List<T> items, CompiledSource compiled, CompiledSource.PagingPlan paging, URI base, Object jsonRoot) {
+            String next = paging.nextPage != null ? CompiledSource.resolveUrl(base, compiled.extract(paging.nextPage, jsonRoot)) : null;
+            int count = paging.pageCount != null ? lastNumber(compiled.extract(paging.pageCount, jsonRoot)) : 0;
+            return new ParsedPage<>(items, next, count);
+        }
+    }
+
+    /**
+     * Fetch the remaining pages of a catalog or chapter and return all items in page order.
+     * With a page URL template and a page count read from the first page, pages 2..N are
+     * requested concurrently (bounded by {@link #PAGE_FETCH_PARALLELISM} and the host's concurrency
+     * and rate limits).
+     * Otherwise pages are followed one at a time through the next-page link, or through the
+     * template until a page comes back empty. A page that fails to load fails the whole
+     * request, so a truncated catalog or half a chapter is never returned as complete.
+     *
+     * @param placeholder template variable of the first page's key, "bookUrl" or "chapterUrl"
+     */
+    private <T> List<T> collectPages(BookSource source, CompiledSource.PagingPlan paging, String method,
+                                     BodyLimits limits, String placeholder, String key, String firstUrl, ParsedPage<T> first,
+                                     PageParser<T> parser) throws Exception {
+        List<T> all = new ArrayList<>(first.items);
+        if (!paging.isPaged()) {
+            return all;
+        }
+
+        int pageCount = Math.min(first.pageCount, MAX_PAGES);
+        if (paging.pageUrl != null && pageCount > 1) {
+            List<Future<List<T>>> pages = new ArrayList<>();
+            // More threads than the host lets through would only queue in its limiter
+            BookSource.RateLimit rateLimit = source.getRateLimit() != null ? source.getRateLimit() : new BookSource.RateLimit();
+            int maxConcurrent = HostRateLimiter.forHost(URI.create(firstUrl).getHost(), source.getName(), rateLimit)
+                    .getMaxConcurrent();
+            Semaphore slots = new Semaphore(Math.min(PAGE_FETCH_PARALLELISM, maxConcurrent));
+            for (int page = 2; page <= pageCount; page++) {
+                String pageUrl = paging.pageUrl.expand(Map.of(placeholder, key, "page", String.valueOf(page)));
+                pages.add(FetchExecutor.getInstance().submit("page", () -> {
+                    slots.acquire();
+                    try {
+                        return parser.parse(pageUrl, fetch(source, pageUrl, method, limits)).items;
+                    } finally {
+                        slots.release();
+                    }
+                }));
+            }
+            try {
+                for (Future<List<T>> page : pages) {
+                    all.addAll(page.get());
+                }
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            } finally {
+                // A failed page or a cancelled request stops the pages still loading
+                pages.forEach(page -> page.cancel(true));
+            }
+            LOG.info("collectPages: " + pageCount + " pages, " + all.size() + " items for " + firstUrl);
+            return all;
+        }
+
+        boolean followTemplate = paging.nextPage == null;
+        Set<String> seen = new HashSet<>();
+        seen.add(firstUrl);
+        int page = 1;
+        String next = followTemplate ? templatePageUrl(paging, placeholder, key, page + 1) : first.nextUrl;
+        while (isPageUrl(next) && seen.add(next) && page < MAX_PAGES) {
+            if (!followTemplate && "chapterUrl".equals(placeholder) && !isSubPage(firstUrl, next)) {
+                // The last sub-page's "next" link usually points at the next chapter
+                break;
+            }
+            ParsedPage<T> parsed = parser.parse(next, fetch(source, next, method, limits));
+            page++;
+            if (parsed.items.isEmpty()) {
+                break;
+            }
+            all.addAll(parsed.items);
+            next = followTemplate ? templatePageUrl(paging, placeholder, key, page + 1) : parsed.nextUrl;
+        }
+        if (page > 1) {
+            LOG.info("collectPages: followed " + page + " pages, " + all.size() + " items for " + firstUrl);
+        }
+        return all;
+    }
+
+    private static String templatePageUrl(CompiledSource.PagingPlan paging, String placeholder, String key, int page) {
+        return paging.pageUrl.expand(Map.of(placeholder, key, "page", String.valueOf(page)));
+    }
+
+    private static boolean isPageUrl(String url) {
+        return url != null && (url.startsWith("http://") || url.startsWith("https://"));
+    }
+
+    /**
+     * Whether a next-page link still belongs to the same chapter: sub-pages share the chapter's
+     * path up to its extension, e.g. /book/123.html → /book/123_2.html or /book/123.html?page=2.
+     */
+    private static boolean isSubPage(String chapterUrl, String pageUrl) {
+        URI chapter = CompiledSource.parseUri(chapterUrl);
+        URI page = CompiledSource.parseUri(pageUrl);
+        if (chapter == null || page == null || chapter.getPath() == null || page.getPath() == null) {
+            return true;
+        }
+        String stem = chapter.getPath();
+        int dot = stem.lastIndexOf('.');
+        if (dot > stem.lastIndexOf('/')) {
+            stem = stem.substring(0, dot);
+        }
+        return page.getPath().startsWith(stem);
+    }
+
+    /**
+     * The last number in a pager text: "1/20", "共20页" and "第1页/共20页" all give 20.
+     */
+    private static int lastNumber(String text) {
+        if (text == null) {
+            return 0;
+        }
+        int end = -1;
+        for (int i = text.length() - 1; i >= 0; i--) {
+            if (Character.isDigit(text.charAt(i))) {
+                end = i + 1;
+                break;
+            }
+        }
+        if (end < 0) {
+            return 0;
+        }
+        int start = end - 1;
+        while (start > 0 && Character.isDigit(text.charAt(start - 1))) {
+            start--;
+        }
+        try {
+            return Integer.parseInt(text.substring(Math.max(start, end - 9), end));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Text of a content element, with <br> and <p> turned into line breaks.
+     */
+    private static String contentText(Element contentEl) {
+        contentEl.select("br").after("\\n");
+        contentEl.select("p").before("\\n");
+        return contentEl.text().replace("\\n", "\n");
+    }
+
     /**
      * Perform an HTTP request and return the response body.
+     * Requests are throttled per host according to the source's rate limit. GET requests
+     * are retried on network errors, 429 and 5xx with exponential backoff and jitter,
+     * honouring Retry-After. Any non-2xx response ends in a FetchException.
+     */
+    private FetchResponse fetch(BookSource source, String url, String method, BodyLimits limits) throws Exception {
+        return fetch(source, url, method, limits, null);
+    }
+
+    /**
+     * Perform an HTTP request, made conditional when validators of a cached response are given.
+     * A 304 answer to a conditional request is returned as a not-modified response with an empty body.
+     * Identical requests already in flight are joined instead of being sent again.
+     */
+    private FetchResponse fetch(BookSource source, String url, String method, BodyLimits limits,
+                                HttpValidators validators) throws Exception {
+        return FETCHES.execute(requestKey(source, method, url, validators), () -> doFetch(source, url, method, limits, validators));
+    }
+
+    private FetchResponse doFetch(BookSource source, String url, String method, BodyLimits limits,
+                                  HttpValidators validators) throws Exception {
+        HttpResponse<InputStream> response = execute(source, url, method, limits, validators);
+        if (response.statusCode() == 304) {
+            return FetchResponse.notModified(validators);
+        }
+        String contentEncoding = response.headers().firstValue("Content-Encoding").orElse(null);
+        byte[] body;
+        try {
+            body = ResponseBodyDecoder.readBody(response.body(), contentEncoding, source.getName(), url, limits.maxBytes);
+        } catch (IOException e) {
+            throw BoundedBodySubscriber.unwrap(e);
+        }
+        Charset charset = CharsetDetector.detect(body, response.headers().firstValue("Content-Type").orElse(null));
+        return new FetchResponse(response.statusCode(), body, charset, HttpValidators.from(response.headers()));
+    }
+
+    /**
+     * Send the request with throttling and retries and return the response with its body still unread,
+     * so callers can either buffer it or stream it. Only 2xx responses (and a 304 for a conditional
+     * request, whose body is already closed) are returned; anything else throws.
+     * <p>
+     * The outcome is reported to {@link SourceHealthTracker}; while a source's circuit is open,
+     * requests to it fail at once without touching the network.
      */
-    private String fetch(String url, String method, Map<String, String> headers) throws Exception {
+    private HttpResponse<InputStream> execute(BookSource source, String url, String method, BodyLimits limits,
+                                              HttpValidators validators) throws Exception {
+        if (Thread.interrupted()) {
+            throw new InterruptedException("fetch cancelled: " + url);
+        }
+        SourceHealthTracker health = SourceHealthTracker.getInstance();
+        if (!health.allowRequest(source.getName())) {
+            throw new FetchException(url, FetchException.Kind.CIRCUIT_OPEN,
+                    "source '" + source.getName() + "' is unavailable (circuit open), skipping " + url);
+        }
+        long start = System.nanoTime();
+        try {
+            HttpResponse<InputStream> response = sendWithRetries(source, url, method, limits, validators);
+            health.recordSuccess(source.getName(), elapsedMs(start));
+            return response;
+        } catch (FetchException e) {
+            // A timeout cut short by our own deadline says nothing about the source
+            FetchDeadline deadline = FetchDeadline.current();
+            boolean sourceFault = isSourceFault(e) && (deadline == null || !deadline.isExpired());
+            health.recordFailure(source.getName(), elapsedMs(start), errorType(e), sourceFault,
+                    e.getKind() == FetchException.Kind.HTTP_STATUS);
+            throw e;
+        }
+    }
+
+    private HttpResponse<InputStream> sendWithRetries(BookSource source, String url, String method, BodyLimits limits,
+                                                      HttpValidators validators) throws Exception {
         HttpClient client = buildHttpClient();
 
         HttpRequest.Builder reqBuilder = HttpRequest.newBuilder()
                 .uri(URI.create(url))
-                .timeout(Duration.ofSeconds(15))
                 .header("User-Agent", DEFAULT_UA);
 
+        boolean customEncoding = false;
+        Map<String, String> headers = source.getHeaders();
         if (headers != null) {
             for (Map.Entry<String, String> entry : headers.entrySet()) {
                 reqBuilder.header(entry.getKey(), entry.getValue());
+                customEncoding |= "Accept-Encoding".equalsIgnoreCase(entry.getKey());
             }
         }
+        if (!customEncoding) {
+            reqBuilder.header("Accept-Encoding", ResponseBodyDecoder.ACCEPT_ENCODING);
+        }
 
-        if ("POST".equalsIgnoreCase(method)) {
-            reqBuilder.POST(HttpRequest.BodyPublishers.noBody());
-        } else {
+        if (validators != null) {
+            if (validators.getEtag() != null && !validators.getEtag().isEmpty()) {
+                reqBuilder.header("If-None-Match", validators.getEtag());
+            }
+            if (validators.getLastModified() != null && !validators.getLastModified().isEmpty()) {
+                reqBuilder.header("If-Modified-Since", validators.getLastModified());
+            }
+        }
+
+        boolean idempotent = !"POST".equalsIgnoreCase(method);
+        if (idempotent) {
             reqBuilder.GET();
+        } else {
+            reqBuilder.POST(HttpRequest.BodyPublishers.noBody());
         }
 
         HttpRequest request = reqBuilder.build();
-        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-        LOG.info("fetch: " + method + " " + url + " → " + response.statusCode());
-        return response.body();
+        BookSource.RateLimit rateLimit = source.getRateLimit() != null ? source.getRateLimit() : new BookSource.RateLimit();
+        HostRateLimiter limiter = HostRateLimiter.forHost(request.uri().getHost(), source.getName(), rateLimit);
+        int maxRetries = idempotent ? Math.max(0, rateLimit.getMaxRetries()) : 0;
+
+        FetchDeadline deadline = FetchDeadline.current();
+        for (int attempt = 0; ; attempt++) {
+            HttpResponse<InputStream> response;
+            // Held until the body is read or closed, not just until the headers arrive
+            HostRateLimiter.Permit permit = limiter.acquire();
+            try {
+                // The request timeout covers the wait for the response headers; the subscriber
+                // bounds the body by what is left of the total timeout after that
+                HttpRequest attemptRequest = HttpRequest.newBuilder(request, (name, value) -> true)
+                        .timeout(firstByteTimeout(deadline, limits, url))
+                        .build();
+                response = client.send(attemptRequest,
+                        BoundedBodySubscriber.handler(url, limits.maxBytes, bodyEndNanos(deadline, limits), permit::release));
+            } catch (IOException e) {
+                permit.release();
+                long delay = backoffDelayMs(attempt);
+                if (attempt >= maxRetries || !fitsDeadline(deadline, delay)) {
+                    throw new FetchException(url, "request failed after " + (attempt + 1) + " attempt(s): " + e.getMessage(), e);
+                }
+                LOG.info("fetch: " + method + " " + url + " failed (" + e.getMessage() + "), retrying in " + delay + " ms");
+                Thread.sleep(delay);
+                continue;
+            } catch (InterruptedException | RuntimeException e) {
+                permit.release();
+                throw e;
+            }
+
+            int status = response.statusCode();
+            LOG.info("fetch: " + method + " " + url + " → " + status);
+            if (status >= 200 && status < 300) {
+                checkHeaders(url, limits, response);
+                return response;
+            }
+            response.body().close();
+            if (status == 304 && validators != null) {
+                return response;
+            }
+
+            long retryAfter = parseRetryAfter(response.headers().firstValue("Retry-After").orElse(null));
+            if (status == 429 || status == 503) {
+                // The host told us to slow down: hold back every request to it, not just this one
+                limiter.pause(retryAfter >= 0 ? retryAfter : backoffDelayMs(attempt));
+            }
+            long delay = retryAfter >= 0 ? retryAfter : backoffDelayMs(attempt);
+            if (!isRetryableStatus(status) || attempt >= maxRetries || retryAfter > MAX_RETRY_AFTER_MS
+                    || !fitsDeadline(deadline, delay)) {
+                throw new FetchException(url, status, "HTTP " + status + " for " + method + " " + url);
+            }
+            LOG.info("fetch: retrying " + url + " in " + delay + " ms (attempt " + (attempt + 2) + ")");
+            Thread.sleep(delay);
+        }
     }
 
     /**
-     * Build HttpClient using JVM default ProxySelector.
-     * IntelliJ registers its proxy settings as the JVM default ProxySelector at startup,
-     * so this automatically respects IDEA's HTTP Proxy configuration.
+     * Open the body as a character stream, decompressed on the fly. The charset is detected from
+     * a buffered prefix (BOM, header, {@code <meta>}, sniffing) before decoding starts.
+     * Closing the reader before the end aborts the rest of the download.
      */
-    private HttpClient buildHttpClient() {
-        HttpClient.Builder builder = HttpClient.newBuilder()
-                .connectTimeout(Duration.ofSeconds(10))
-                .followRedirects(HttpClient.Redirect.NORMAL);
+    private Reader openBodyReader(BookSource source, String url, BodyLimits limits,
+                                  HttpResponse<InputStream> response) throws IOException {
+        String contentEncoding = response.headers().firstValue("Content-Encoding").orElse(null);
+        BufferedInputStream in = new BufferedInputStream(
+                ResponseBodyDecoder.openBody(response.body(), contentEncoding, source.getName(), url, limits.maxBytes),
+                CharsetDetector.PREFIX_SIZE);
         try {
-            ProxySelector proxySelector = ProxySelector.getDefault();
-            if (proxySelector != null) {
-                var proxies = proxySelector.select(URI.create("https://www.google.com"));
-                LOG.info("buildHttpClient: ProxySelector=" + proxySelector.getClass().getName() + ", proxies=" + proxies);
-                boolean hasDirect = proxies.size() == 1 && proxies.get(0).type() == Proxy.Type.DIRECT;
-                if (!hasDirect) {
-                    builder.proxy(proxySelector);
-                }
-            } else {
-                LOG.info("buildHttpClient: ProxySelector is null, using direct connection");
-            }
-        } catch (Exception e) {
-            LOG.warn("buildHttpClient: failed to get proxy: " + e.getMessage());
+            Charset charset = CharsetDetector.detect(in, response.headers().firstValue("Content-Type").orElse(null));
+            return new InputStreamReader(in, charset);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
         }
-        return builder.build();
     }
 
     /**
-     * Extract a value from an HTML element using a rule string.
-     * Rule format: "selector@attr" or "@attr" (use parent element directly).
-     * Special attrs: @text → el.text(), @href → el.absUrl("href"), @src → el.absUrl("src").
+     * Parse an HTML body straight from its bytes with the detected charset.
      */
-    private String extractHtml(Element parent, String rule) {
-        if (rule == null || rule.isEmpty()) {
-            return "";
-        }
+    private static Document parseHtml(FetchResponse response, String url) throws IOException {
+        return Jsoup.parse(response.openStream(), response.getCharset().name(), url);
+    }
 
-        String selector;
-        String attr;
+    /**
+     * Identity of a request for coalescing: method, URL and a hash of every header that can change
+     * the response (the source's headers and the conditional validators).
+     */
+    private static String requestKey(BookSource source, String method, String url, HttpValidators validators) {
+        int headersHash = Objects.hash(source.getHeaders(),
+                validators != null ? validators.getEtag() : null,
+                validators != null ? validators.getLastModified() : null);
+        return method.toUpperCase() + " " + url + " #" + Integer.toHexString(headersHash);
+    }
 
-        int atIndex = rule.indexOf('@');
-        if (atIndex < 0) {
-            // No @ means treat the whole rule as a selector, default to text
-            selector = rule;
-            attr = "text";
-        } else {
-            selector = rule.substring(0, atIndex).trim();
-            attr = rule.substring(atIndex + 1).trim();
+    /**
+     * Reject a 2xx response before its body is read: a Content-Type outside the rule's allow-list,
+     * or a Content-Length over its size limit. Bodies without a length are bounded while streaming.
+     */
+    private static void checkHeaders(String url, BodyLimits limits, HttpResponse<InputStream> response) throws IOException {
+        String contentType = response.headers().firstValue("Content-Type").orElse(null);
+        if (!limits.allowsContentType(contentType)) {
+            response.body().close();
+            throw new FetchException(url, FetchException.Kind.CONTENT_TYPE,
+                    "unexpected Content-Type '" + contentType + "' for " + url);
+        }
+        long length = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+        if (length > limits.maxBytes) {
+            response.body().close();
+            throw new FetchException(url, FetchException.Kind.TOO_LARGE,
+                    "Content-Length " + length + " of " + url + " exceeds " + limits.maxBytes + " bytes");
         }
+    }
 
-        Element target;
-        if (selector.isEmpty()) {
-            target = parent;
-        } else {
-            target = parent.selectFirst(selector);
+    /**
+     * How long one attempt may wait for the response headers: the rule's first-byte budget,
+     * shortened to what is left of the deadline of the work this request belongs to.
+     */
+    private static Duration firstByteTimeout(FetchDeadline deadline, BodyLimits limits, String url) throws FetchException {
+        if (deadline == null) {
+            return limits.firstByteTimeout;
         }
+        long remaining = deadline.remainingMs();
+        if (remaining <= 0) {
+            throw new FetchException(url, FetchException.Kind.DEADLINE, "deadline exceeded before requesting " + url);
+        }
+        return Duration.ofMillis(Math.min(limits.firstByteTimeout.toMillis(), remaining));
+    }
 
-        if (target == null) {
-            return "";
+    /**
+     * When the body of an attempt starting now must be complete ({@link System#nanoTime} based):
+     * the rule's total timeout from now, and never past the deadline.
+     */
+    private static long bodyEndNanos(FetchDeadline deadline, BodyLimits limits) {
+        long budgetMs = limits.timeout.toMillis();
+        if (deadline != null) {
+            budgetMs = Math.min(budgetMs, deadline.remainingMs());
         }
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMs);
+    }
 
-        return switch (attr) {
-            case "text" -> target.text();
-            case "href" -> target.absUrl("href");
-            case "src" -> target.absUrl("src");
-            default -> target.attr(attr);
+    /**
+     * Whether waiting {@code delayMs} before a retry still leaves time for the retry itself.
+     */
+    private static boolean fitsDeadline(FetchDeadline deadline, long delayMs) {
+        return deadline == null || deadline.remainingMs() > delayMs;
+    }
+
+    /**
+     * Short failure class for health stats: the HTTP status class, the kind of network error,
+     * or the limit the response broke.
+     */
+    private static String errorType(FetchException e) {
+        int status = e.getStatusCode();
+        if (status >= 500) {
+            return "http_5xx";
+        }
+        if (status > 0) {
+            return "http_" + status;
+        }
+        if (e.getKind() != FetchException.Kind.NETWORK && e.getKind() != FetchException.Kind.FIRST_BYTE_TIMEOUT) {
+            return e.getKind().name().toLowerCase();
+        }
+        Throwable cause = e.getCause();
+        if (cause instanceof HttpTimeoutException) {
+            return "timeout";
+        }
+        if (cause instanceof UnknownHostException) {
+            return "dns";
+        }
+        if (cause instanceof ConnectException) {
+            return "connect";
+        }
+        return "network";
+    }
+
+    /**
+     * Whether a failure says the source itself is down or refusing us, as opposed to one missing
+     * resource: a 404 for a single chapter should not trip the breaker of a healthy site.
+     * Responses rejected by a rule's limits point at the rule rather than the site.
+     */
+    private static boolean isSourceFault(FetchException e) {
+        return switch (e.getKind()) {
+            case HTTP_STATUS -> e.getStatusCode() >= 500 || e.getStatusCode() == 429 || e.getStatusCode() == 403;
+            case NETWORK, FIRST_BYTE_TIMEOUT, BODY_TIMEOUT -> true;
+            case TOO_LARGE, CONTENT_TYPE, DEADLINE, CIRCUIT_OPEN, NO_MATCH -> false;
         };
     }
 
     /**
-     * Extract a string value from a JSON map by key.
+     * Whether a catalog or chapter failed shortly before; if so, its error becomes the last error
+     * and nothing is requested.
      */
-    @SuppressWarnings("unchecked")
-    private String extractJsonValue(Map item, String key) {
-        if (item == null || key == null || key.isEmpty()) {
-            return "";
+    private boolean failedRecently(BookSource source, String url) {
+        FetchException known = NegativeCache.getInstance().lookup(source.getName(), url);
+        if (known == null) {
+            return false;
         }
-        Object val = item.get(key);
-        return val != null ? val.toString() : "";
+        lastError = known;
+        LOG.info("Skipping " + url + " of '" + source.getName() + "', failed recently: " + known.getMessage());
+        return true;
     }
 
     /**
-     * Resolve a potentially relative URL against a base URL.
+     * Remember why a catalog or chapter came back empty: the request failure if there was one
+     * (a mirror may have failed after the primary missed), otherwise the rule matched nothing.
      */
-    private String resolveUrl(String baseUrl, String url) {
-        if (url == null || url.isEmpty()) {
-            return "";
+    private void rememberEmpty(BookSource source, String url, String rule) {
+        if (cutShort()) {
+            return;
         }
-        // Already absolute
-        if (url.startsWith("http://") || url.startsWith("https://")) {
-            return url;
+        if (lastError == null) {
+            lastError = new FetchException(url, FetchException.Kind.NO_MATCH,
+                    rule + " rule of '" + source.getName() + "' matched nothing for " + url);
         }
-        // Protocol-relative
-        if (url.startsWith("//")) {
-            try {
-                URI base = URI.create(baseUrl);
-                return base.getScheme() + ":" + url;
-            } catch (Exception e) {
-                return "https:" + url;
-            }
+        rememberFailure(source, url);
+    }
+
+    private void rememberFailure(BookSource source, String url) {
+        if (lastError != null && !cutShort()) {
+            NegativeCache.getInstance().record(source.getName(), url, lastError);
+        }
+    }
+
+    /**
+     * Whether the current fetch was cancelled or ran out of its own deadline; its failures, timeouts
+     * included, then say nothing about the URL.
+     */
+    private static boolean cutShort() {
+        if (Thread.currentThread().isInterrupted()) {
+            return true;
+        }
+        FetchDeadline deadline = FetchDeadline.current();
+        return deadline != null && deadline.isExpired();
+    }
+
+    /**
+     * Remember a request failure for {@link #getLastError}; other failures leave it alone.
+     */
+    private void failed(Throwable e) {
+        if (e instanceof FetchException fe) {
+            lastError = fe;
+        }
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    private static boolean isRetryableStatus(int status) {
+        return status == 408 || status == 429 || status == 500 || status == 502 || status == 503 || status == 504;
+    }
+
+    /**
+     * Exponential backoff with jitter: a random delay in [base/2, base], base = 500 ms * 2^attempt.
+     */
+    private static long backoffDelayMs(int attempt) {
+        long base = Math.min(MAX_BACKOFF_MS, RETRY_BASE_DELAY_MS << Math.min(attempt, 10));
+        return base / 2 + ThreadLocalRandom.current().nextLong(base / 2 + 1);
+    }
+
+    /**
+     * Parse a Retry-After header, given either as delta-seconds or as an HTTP date.
+     * @return the delay in milliseconds, or -1 if absent or unparseable
+     */
+    private static long parseRetryAfter(String value) {
+        if (value == null || value.isBlank()) {
+            return -1;
         }
-        // Path-relative
+        String trimmed = value.trim();
         try {
-            URI base = URI.create(baseUrl);
-            return base.resolve(url).toString();
+            return Math.max(0, Long.parseLong(trimmed) * 1000);
+        } catch (NumberFormatException ignored) {
+            // not delta-seconds, try HTTP date below
+        }
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, date.toInstant().toEpochMilli() - System.currentTimeMillis());
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Build HttpClient using JVM default ProxySelector.
+     * IntelliJ registers its proxy settings as the JVM default ProxySelector at startup,
+     * so this automatically respects IDEA's HTTP Proxy configuration.
+     */
+    private HttpClient buildHttpClient() {
+        HttpClient.Builder builder = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .followRedirects(HttpClient.Redirect.NORMAL);
+        try {
+            ProxySelector proxySelector = ProxySelector.getDefault();
+            if (proxySelector != null) {
+                var proxies = proxySelector.select(URI.create("https://www.google.com"));
+                LOG.info("buildHttpClient: ProxySelector=" + proxySelector.getClass().getName() + ", proxies=" + proxies);
+                boolean hasDirect = proxies.size() == 1 && proxies.get(0).type() == Proxy.Type.DIRECT;
+                if (!hasDirect) {
+                    builder.proxy(proxySelector);
+                }
+            } else {
+                LOG.info("buildHttpClient: ProxySelector is null, using direct connection");
+            }
         } catch (Exception e) {
-            LOG.warn("resolveUrl: failed to resolve '" + url + "' against '" + baseUrl + "'");
-            return url;
+            LOG.warn("buildHttpClient: failed to get proxy: " + e.getMessage());
         }
+        return builder.build();
+    }
+
+    /**
+     * Base for resolving relative links in a response: the request URL, or the source's base URL
+     * if the request URL cannot be parsed. Parsed once per response rather than once per row.
+     */
+    private static URI baseUriFor(CompiledSource compiled, String requestUrl) {
+        URI base = CompiledSource.parseUri(requestUrl);
+        return base != null ? base : compiled.baseUri();
     }
 }
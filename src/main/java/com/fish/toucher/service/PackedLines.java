@@ -0,0 +1,99 @@
+package com.fish.toucher.service;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * The lines of a cached chapter in their stored form, read by index without splitting the text.
+ * <p>
+ * Layout: a marker byte that cannot start UTF-8 text, the line count, the payload length, the
+ * lines' UTF-8 bytes back to back, then the end offset of each line in the payload. The text
+ * comes first so the compression dictionary, which is built from text, matches right from the
+ * start. A line is decoded each time it is asked for; readers only look at a page at a time.
+ */
+final class PackedLines extends AbstractList<String> implements RandomAccess {
+
+    static final byte MARKER = (byte) 0xFE;
+    private static final int HEADER_SIZE = 9;
+
+    private final byte[] data;
+    private final int count;
+    private final int tableStart;
+
+    private PackedLines(byte[] data, int count, int payloadLength) {
+        this.data = data;
+        this.count = count;
+        this.tableStart = HEADER_SIZE + payloadLength;
+    }
+
+    static boolean isPacked(byte[] data) {
+        return data.length >= HEADER_SIZE && data[0] == MARKER;
+    }
+
+    static byte[] pack(List<String> lines) {
+        byte[][] encoded = new byte[lines.size()][];
+        int payloadLength = 0;
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = lines.get(i).getBytes(StandardCharsets.UTF_8);
+            payloadLength += encoded[i].length;
+        }
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + payloadLength + 4 * encoded.length);
+        buf.put(MARKER).putInt(encoded.length).putInt(payloadLength);
+        for (byte[] line : encoded) {
+            buf.put(line);
+        }
+        int end = 0;
+        for (byte[] line : encoded) {
+            end += line.length;
+            buf.putInt(end);
+        }
+        return buf.array();
+    }
+
+    /**
+     * View packed bytes as lines; the array is kept, not copied.
+     *
+     * @throws IllegalArgumentException if the data is not a well-formed packed chapter
+     */
+    static PackedLines wrap(byte[] data) {
+        if (!isPacked(data)) {
+            throw new IllegalArgumentException("Not packed lines");
+        }
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        int count = buf.getInt(1);
+        int payloadLength = buf.getInt(5);
+        if (count < 0 || payloadLength < 0 || (long) HEADER_SIZE + payloadLength + 4L * count != data.length) {
+            throw new IllegalArgumentException("Truncated packed lines: " + data.length + " bytes for "
+                    + count + " lines of " + payloadLength);
+        }
+        return new PackedLines(data, count, payloadLength);
+    }
+
+    @Override
+    public String get(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Line " + index + " of " + count);
+        }
+        int start = index == 0 ? 0 : end(index - 1);
+        int end = end(index);
+        return new String(data, HEADER_SIZE + start, end - start, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    /** Bytes held, the memory this list takes whatever is read from it. */
+    int byteSize() {
+        return data.length;
+    }
+
+    private int end(int index) {
+        int p = tableStart + 4 * index;
+        return (data[p] & 0xFF) << 24 | (data[p + 1] & 0xFF) << 16 | (data[p + 2] & 0xFF) << 8 | (data[p + 3] & 0xFF);
+    }
+}
@@ -0,0 +1,153 @@
+package com.fish.toucher.service;
+
+import org.brotli.dec.BrotliInputStream;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Decodes a response body according to its Content-Encoding while streaming it,
+ * and counts the bytes on the wire and after decoding.
+ */
+final class ResponseBodyDecoder {
+
+    /** Value sent as Accept-Encoding; every coding listed here can be decoded below. */
+    static final String ACCEPT_ENCODING = "gzip, deflate, br";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private ResponseBodyDecoder() {}
+
+    /**
+     * Read the whole body, undoing the given Content-Encoding on the fly.
+     * @param sourceName source the bytes are accounted to in {@link TransferStats}
+     * @param maxBytes   limit on the decoded size, see {@link #openBody}
+     */
+    static byte[] readBody(InputStream raw, String contentEncoding, String sourceName,
+                           String url, long maxBytes) throws IOException {
+        try (InputStream in = openBody(raw, contentEncoding, sourceName, url, maxBytes)) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Wrap the raw body in a decoding stream. Byte counts are recorded when the stream is closed,
+     * so a reader that stops early only accounts for what was actually transferred.
+     * <p>
+     * The wire size is already bounded by {@link BoundedBodySubscriber}; a few hundred KB of gzip
+     * can still inflate to gigabytes, so reading more than {@code maxBytes} decoded bytes fails
+     * with a {@link FetchException} of kind TOO_LARGE.
+     */
+    static InputStream openBody(InputStream raw, String contentEncoding, String sourceName,
+                                String url, long maxBytes) throws IOException {
+        CountingInputStream wire = new CountingInputStream(raw);
+        InputStream decoding;
+        try {
+            decoding = decodingStream(wire, contentEncoding);
+        } catch (IOException | RuntimeException e) {
+            // Nobody else will close the raw body, and an open one keeps its connection busy
+            try {
+                raw.close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        CountingInputStream decoded = new CountingInputStream(decoding) {
+            private boolean closed;
+
+            @Override
+            public void close() throws IOException {
+                if (!closed) {
+                    closed = true;
+                    TransferStats.getInstance().record(sourceName, wire.getCount(), getCount());
+                }
+                super.close();
+            }
+
+            @Override
+            protected void counted() throws IOException {
+                if (getCount() > maxBytes) {
+                    throw new FetchException(url, FetchException.Kind.TOO_LARGE,
+                            "decoded response of " + url + " exceeds " + maxBytes + " bytes");
+                }
+            }
+        };
+        return decoded;
+    }
+
+    private static InputStream decodingStream(InputStream wire, String contentEncoding) throws IOException {
+        String encoding = contentEncoding != null ? contentEncoding.trim().toLowerCase() : "";
+        return switch (encoding) {
+            case "gzip", "x-gzip" -> new GZIPInputStream(wire, BUFFER_SIZE);
+            case "deflate" -> inflatingStream(new BufferedInputStream(wire, BUFFER_SIZE));
+            case "br" -> new BrotliInputStream(wire);
+            case "", "identity" -> wire;
+            default -> throw new IOException("Unsupported Content-Encoding: " + contentEncoding);
+        };
+    }
+
+    /**
+     * "deflate" is supposed to be zlib-wrapped, but some servers send a raw deflate stream.
+     * Peek at the first two bytes to tell the two apart.
+     */
+    private static InputStream inflatingStream(BufferedInputStream in) throws IOException {
+        in.mark(2);
+        int b0 = in.read();
+        int b1 = in.read();
+        in.reset();
+        boolean zlibHeader = b0 >= 0 && b1 >= 0 && (b0 & 0x0F) == 8 && ((b0 << 8) | b1) % 31 == 0;
+        return new InflaterInputStream(in, new Inflater(!zlibHeader), BUFFER_SIZE);
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        /** Called after the count has grown. */
+        protected void counted() throws IOException {}
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+                counted();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+                counted();
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            if (skipped > 0) {
+                count += skipped;
+                counted();
+            }
+            return skipped;
+        }
+    }
+}
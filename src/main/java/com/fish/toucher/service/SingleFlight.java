@@ -0,0 +1,87 @@
+package com.fish.toucher.service;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Collapses concurrent calls for the same key into one: the first caller runs the work on its own
+ * thread, callers arriving while it is in flight wait for and share its result (or its failure).
+ * Nothing is cached; once the call completes, the next caller starts a new one.
+ * <p>
+ * A failure that belongs to the leader alone is not shared: if the leader was cancelled (its
+ * thread interrupted, e.g. because its dialog closed) or ran out of its own deadline, the callers
+ * waiting on it start over, and one of them runs the work as the new leader.
+ */
+final class SingleFlight<T> {
+
+    @FunctionalInterface
+    interface Call<T> {
+        T run() throws Exception;
+    }
+
+    /** Tells the callers waiting on a leader that it gave up for reasons of its own. */
+    private static final class LeaderAbandoned extends Exception {
+        LeaderAbandoned() {
+            super(null, null, false, false);
+        }
+    }
+
+    private final Map<String, CompletableFuture<T>> inFlight = new ConcurrentHashMap<>();
+
+    T execute(String key, Call<T> call) throws Exception {
+        while (true) {
+            CompletableFuture<T> mine = new CompletableFuture<>();
+            CompletableFuture<T> leader = inFlight.putIfAbsent(key, mine);
+            if (leader == null) {
+                return lead(key, mine, call);
+            }
+            try {
+                return await(leader);
+            } catch (LeaderAbandoned e) {
+                // Try again, as the new leader or behind one
+            }
+        }
+    }
+
+    private T lead(String key, CompletableFuture<T> mine, Call<T> call) throws Exception {
+        try {
+            T result = call.run();
+            mine.complete(result);
+            return result;
+        } catch (Throwable t) {
+            mine.completeExceptionally(isLeadersOwn(t) ? new LeaderAbandoned() : t);
+            throw t;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /** Whether a failure says more about the leader's circumstances than about the request. */
+    private static boolean isLeadersOwn(Throwable t) {
+        if (t instanceof InterruptedException || Thread.currentThread().isInterrupted()) {
+            return true;
+        }
+        FetchDeadline deadline = FetchDeadline.current();
+        return deadline != null && deadline.isExpired();
+    }
+
+    private static <T> T await(CompletableFuture<T> leader) throws Exception {
+        try {
+            return leader.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception ex) {
+                throw ex;
+            }
+            if (cause instanceof Error err) {
+                throw err;
+            }
+            throw e;
+        } catch (CancellationException e) {
+            throw new InterruptedException("shared request was cancelled");
+        }
+    }
+}
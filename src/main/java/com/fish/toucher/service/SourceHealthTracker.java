@@ -0,0 +1,345 @@
+package com.fish.toucher.service;
+
+import com.fish.toucher.model.BookSource;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+import com.intellij.openapi.diagnostic.Logger;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-source health: outcome and latency of the last requests, and a circuit breaker.
+ * <p>
+ * After {@link #FAILURE_THRESHOLD} consecutive failures a source's circuit opens and requests to it
+ * fail immediately instead of waiting out timeouts. Once the cooldown has passed, a single request is
+ * let through as a probe: success closes the circuit, failure reopens it with a doubled cooldown.
+ * The rolling window is saved to ~/.config/fish-toucher/source-health.json so rankings survive restarts.
+ */
+public class SourceHealthTracker {
+
+    private static final Logger LOG = Logger.getInstance(SourceHealthTracker.class);
+    // Before INSTANCE: the constructor loads the saved stats with it
+    private static final Type HEALTH_MAP_TYPE = new TypeToken<Map<String, SourceHealth>>() {}.getType();
+    private static final SourceHealthTracker INSTANCE = new SourceHealthTracker();
+
+    /** Requests kept per source. */
+    private static final int WINDOW = 50;
+    private static final int FAILURE_THRESHOLD = 5;
+    private static final long BASE_COOLDOWN_MS = TimeUnit.SECONDS.toMillis(30);
+    private static final long MAX_COOLDOWN_MS = TimeUnit.MINUTES.toMillis(10);
+    /** A probe that never reported back (e.g. its thread was interrupted) stops blocking others after this. */
+    private static final long PROBE_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(1);
+    private static final long SAVE_INTERVAL_MS = TimeUnit.SECONDS.toMillis(30);
+
+    private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    private final Path healthFile;
+    private final Map<String, SourceHealth> health = new ConcurrentHashMap<>();
+    private volatile long lastSaveMs;
+    private volatile boolean dirty;
+
+    private SourceHealthTracker() {
+        healthFile = Paths.get(System.getProperty("user.home"), ".config", "fish-toucher", "source-health.json");
+        load();
+    }
+
+    public static SourceHealthTracker getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Whether a request to the source may be sent now. False while its circuit is open;
+     * after the cooldown, true for exactly one probe request.
+     */
+    public boolean allowRequest(String sourceName) {
+        return forSource(sourceName).tryAcquire(System.currentTimeMillis());
+    }
+
+    public void recordSuccess(String sourceName, long latencyMs) {
+        forSource(sourceName).onSuccess(System.currentTimeMillis(), latencyMs);
+        markDirty();
+    }
+
+    /**
+     * @param errorType   short error class, e.g. "timeout", "http_5xx"
+     * @param sourceFault whether the failure says the source is down (network errors, 5xx, 429);
+     *                    a 404 for one chapter lowers the success rate but does not trip the breaker
+     * @param responded   whether the source sent a response at all; one that does is alive, so a
+     *                    half-open circuit probed with it closes even if the request failed
+     */
+    public void recordFailure(String sourceName, long latencyMs, String errorType, boolean sourceFault, boolean responded) {
+        forSource(sourceName).onFailure(System.currentTimeMillis(), latencyMs, errorType, sourceFault, responded);
+        markDirty();
+    }
+
+    public boolean isCircuitOpen(String sourceName) {
+        SourceHealth h = health.get(key(sourceName));
+        return h != null && h.isOpen(System.currentTimeMillis());
+    }
+
+    /**
+     * Latency percentile of successful requests, or -1 if there are none yet.
+     * @param percentile 0..100, e.g. 95
+     */
+    public long latencyPercentile(String sourceName, int percentile) {
+        SourceHealth h = health.get(key(sourceName));
+        return h != null ? h.latencyPercentile(percentile) : -1;
+    }
+
+    /**
+     * Sources ordered so that the healthiest comes first: closed circuits before open ones, then
+     * by success rate in 10% steps (so noise does not reshuffle the list), then by median latency.
+     * Sources without measurements go after measured sources of the same success bucket.
+     */
+    public List<BookSource> sortByHealth(List<BookSource> sources) {
+        long now = System.currentTimeMillis();
+        List<BookSource> sorted = new ArrayList<>(sources);
+        sorted.sort(Comparator
+                .comparing((BookSource s) -> snapshot(s.getName()).isOpen(now))
+                .thenComparing(s -> -Math.round(snapshot(s.getName()).successRate() * 10))
+                .thenComparingLong(s -> {
+                    long p50 = snapshot(s.getName()).latencyPercentile(50);
+                    return p50 >= 0 ? p50 : Long.MAX_VALUE;
+                }));
+        return sorted;
+    }
+
+    /**
+     * Short summary for the source list, e.g. "success 96%, p50 320 ms, p95 1.4 s", or "" if unmeasured.
+     */
+    public String describe(String sourceName) {
+        SourceHealth h = health.get(key(sourceName));
+        return h != null ? h.describe(System.currentTimeMillis()) : "";
+    }
+
+    /**
+     * Forget a source, e.g. after it was deleted.
+     */
+    public void remove(String sourceName) {
+        if (health.remove(key(sourceName)) != null) {
+            dirty = true;
+            save();
+        }
+    }
+
+    private SourceHealth forSource(String sourceName) {
+        return health.computeIfAbsent(key(sourceName), k -> new SourceHealth());
+    }
+
+    private SourceHealth snapshot(String sourceName) {
+        SourceHealth h = health.get(key(sourceName));
+        return h != null ? h : SourceHealth.EMPTY;
+    }
+
+    private static String key(String sourceName) {
+        return sourceName != null ? sourceName : "";
+    }
+
+    private void markDirty() {
+        dirty = true;
+        if (System.currentTimeMillis() - lastSaveMs > SAVE_INTERVAL_MS) {
+            save();
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(healthFile)) {
+            return;
+        }
+        try {
+            Map<String, SourceHealth> loaded = gson.fromJson(Files.readString(healthFile, StandardCharsets.UTF_8), HEALTH_MAP_TYPE);
+            if (loaded != null) {
+                health.putAll(loaded);
+            }
+        } catch (Exception e) {
+            LOG.warn("Failed to load source health: " + healthFile, e);
+        }
+    }
+
+    private synchronized void save() {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        lastSaveMs = System.currentTimeMillis();
+        try {
+            Map<String, SourceHealth> copy = new LinkedHashMap<>();
+            for (Map.Entry<String, SourceHealth> e : health.entrySet()) {
+                copy.put(e.getKey(), e.getValue().copy());
+            }
+            Files.createDirectories(healthFile.getParent());
+            Files.writeString(healthFile, gson.toJson(copy, HEALTH_MAP_TYPE), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            LOG.warn("Failed to save source health", e);
+        }
+    }
+
+    /** One request outcome. */
+    private static class Sample {
+        long at;
+        long latencyMs;
+        boolean ok;
+        String error;
+    }
+
+    /** Rolling window and breaker state of one source; also its on-disk form. */
+    private static class SourceHealth {
+        static final SourceHealth EMPTY = new SourceHealth();
+
+        List<Sample> samples = new ArrayList<>();
+        int consecutiveFailures;
+        /** 0 while closed; otherwise the time until which requests are refused. */
+        long openUntil;
+        long cooldownMs = BASE_COOLDOWN_MS;
+        transient long probeStartedAt;
+
+        synchronized boolean tryAcquire(long now) {
+            if (openUntil == 0) {
+                return true;
+            }
+            if (now < openUntil) {
+                return false;
+            }
+            // Half-open: one probe at a time
+            if (probeStartedAt != 0 && now - probeStartedAt < PROBE_TIMEOUT_MS) {
+                return false;
+            }
+            probeStartedAt = now;
+            return true;
+        }
+
+        synchronized boolean isOpen(long now) {
+            return openUntil != 0 && (now < openUntil || probeStartedAt != 0);
+        }
+
+        synchronized void onSuccess(long now, long latencyMs) {
+            add(now, latencyMs, true, null);
+            consecutiveFailures = 0;
+            if (openUntil != 0) {
+                LOG.info("Source recovered, closing circuit");
+            }
+            openUntil = 0;
+            cooldownMs = BASE_COOLDOWN_MS;
+            probeStartedAt = 0;
+        }
+
+        synchronized void onFailure(long now, long latencyMs, String errorType, boolean sourceFault, boolean responded) {
+            add(now, latencyMs, false, errorType);
+            if (!sourceFault) {
+                if (probeStartedAt != 0) {
+                    if (responded) {
+                        // A 404 to the probe still proves the source is up
+                        LOG.info("Source answered the probe, closing circuit");
+                        consecutiveFailures = 0;
+                        openUntil = 0;
+                        cooldownMs = BASE_COOLDOWN_MS;
+                    }
+                    // Otherwise the probe told nothing (e.g. our own deadline); let the next request probe
+                    probeStartedAt = 0;
+                }
+                return;
+            }
+            consecutiveFailures++;
+            if (probeStartedAt != 0) {
+                // The probe failed: stay open, back off further
+                cooldownMs = Math.min(MAX_COOLDOWN_MS, cooldownMs * 2);
+                openUntil = now + cooldownMs;
+                probeStartedAt = 0;
+            } else if (openUntil == 0 && consecutiveFailures >= FAILURE_THRESHOLD) {
+                cooldownMs = BASE_COOLDOWN_MS;
+                openUntil = now + cooldownMs;
+                LOG.info("Opening circuit after " + consecutiveFailures + " consecutive failures (" + errorType + ")");
+            }
+        }
+
+        synchronized double successRate() {
+            if (samples.isEmpty()) {
+                return 1.0;
+            }
+            int ok = 0;
+            for (Sample s : samples) {
+                if (s.ok) ok++;
+            }
+            return ok / (double) samples.size();
+        }
+
+        synchronized long latencyPercentile(int percentile) {
+            List<Long> latencies = new ArrayList<>();
+            for (Sample s : samples) {
+                if (s.ok) latencies.add(s.latencyMs);
+            }
+            if (latencies.isEmpty()) {
+                return -1;
+            }
+            latencies.sort(null);
+            int idx = (int) Math.ceil(percentile / 100.0 * latencies.size()) - 1;
+            return latencies.get(Math.max(0, Math.min(latencies.size() - 1, idx)));
+        }
+
+        synchronized String describe(long now) {
+            if (samples.isEmpty()) {
+                return "";
+            }
+            if (isOpen(now)) {
+                Map<String, Integer> errors = recentErrors();
+                return "\u7194\u65ad\u4e2d" + (errors.isEmpty() ? "" : " " + errors.keySet());
+            }
+            StringBuilder sb = new StringBuilder();
+            sb.append("\u6210\u529f\u7387 ").append(Math.round(successRate() * 100)).append('%');
+            long p50 = latencyPercentile(50);
+            if (p50 >= 0) {
+                sb.append(", p50 ").append(formatMs(p50)).append(", p95 ").append(formatMs(latencyPercentile(95)));
+            }
+            return sb.toString();
+        }
+
+        /** Error type → count within the window, most recent types first. */
+        private Map<String, Integer> recentErrors() {
+            Map<String, Integer> errors = new LinkedHashMap<>();
+            for (int i = samples.size() - 1; i >= 0; i--) {
+                Sample s = samples.get(i);
+                if (!s.ok && s.error != null) {
+                    errors.merge(s.error, 1, Integer::sum);
+                }
+            }
+            return errors;
+        }
+
+        private void add(long now, long latencyMs, boolean ok, String error) {
+            Sample s = new Sample();
+            s.at = now;
+            s.latencyMs = latencyMs;
+            s.ok = ok;
+            s.error = error;
+            samples.add(s);
+            if (samples.size() > WINDOW) {
+                samples.remove(0);
+            }
+        }
+
+        synchronized SourceHealth copy() {
+            SourceHealth c = new SourceHealth();
+            c.samples = new ArrayList<>(samples);
+            c.consecutiveFailures = consecutiveFailures;
+            c.openUntil = openUntil;
+            c.cooldownMs = cooldownMs;
+            return c;
+        }
+
+        private static String formatMs(long ms) {
+            return ms < 1000 ? ms + " ms" : String.format("%.1f s", ms / 1000.0);
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.fish.toucher.service;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.parser.Parser;
+import org.jsoup.parser.StreamParser;
+import org.jsoup.select.Evaluator;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Iterator;
+
+/**
+ * Extracts a chapter's content element with jsoup's StreamParser instead of building the full DOM.
+ * <p>
+ * Elements are handed out as they close. Purify matches are dropped right away, and so is every
+ * closed subtree that cannot be part of the content (no open ancestor matches the content
+ * selector), which keeps the partial DOM small. Parsing stops as soon as the content element
+ * closes, so the remainder of the page (comments, footer, ads) is never read.
+ */
+final class StreamingContentExtractor {
+
+    private StreamingContentExtractor() {}
+
+    /**
+     * @return the first element matching the plan's content selector, with purify matches removed,
+     *         or null if the page has no such element
+     */
+    static Element extract(Reader reader, String baseUrl, CompiledSource.ContentPlan plan) throws IOException {
+        Evaluator content = plan.content;
+        Evaluator purifier = plan.purify;
+
+        try (StreamParser parser = new StreamParser(Parser.htmlParser()).parse(reader, baseUrl)) {
+            Document doc = parser.document();
+            Iterator<Element> it = parser.iterator();
+            while (it.hasNext()) {
+                Element el = it.next();
+                if (purifier != null && purifier.matches(doc, el)) {
+                    el.remove();
+                    continue;
+                }
+                boolean insideMatch = hasMatchingAncestor(doc, el, content);
+                if (content.matches(doc, el) && !insideMatch) {
+                    // An outer match would be emitted later; only the outermost one is the content
+                    parser.stop();
+                    return el;
+                }
+                if (plan.prunable && !insideMatch) {
+                    el.remove();
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean hasMatchingAncestor(Document doc, Element el, Evaluator content) {
+        for (Element p = el.parent(); p != null && p != doc; p = p.parent()) {
+            if (content.matches(doc, p)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
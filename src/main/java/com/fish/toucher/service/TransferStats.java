@@ -0,0 +1,62 @@
+package com.fish.toucher.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Per-source byte counters: bytes received on the wire vs. bytes after decompression.
+ * The difference is the bandwidth saved by compressed transfer.
+ */
+public class TransferStats {
+
+    private static final TransferStats INSTANCE = new TransferStats();
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    private TransferStats() {}
+
+    public static TransferStats getInstance() {
+        return INSTANCE;
+    }
+
+    public void record(String sourceName, long wireBytes, long decodedBytes) {
+        Counter counter = counters.computeIfAbsent(sourceName != null ? sourceName : "", k -> new Counter());
+        counter.wireBytes.addAndGet(wireBytes);
+        counter.decodedBytes.addAndGet(decodedBytes);
+    }
+
+    public long getWireBytes(String sourceName) {
+        Counter counter = counters.get(sourceName);
+        return counter != null ? counter.wireBytes.get() : 0;
+    }
+
+    public long getDecodedBytes(String sourceName) {
+        Counter counter = counters.get(sourceName);
+        return counter != null ? counter.decodedBytes.get() : 0;
+    }
+
+    /**
+     * Short human-readable summary, e.g. "↓ 1.2 MB / 6.8 MB (82% saved)", or "" if nothing was transferred.
+     */
+    public String describe(String sourceName) {
+        long wire = getWireBytes(sourceName);
+        long decoded = getDecodedBytes(sourceName);
+        if (decoded == 0) {
+            return "";
+        }
+        long savedPercent = Math.max(0, (decoded - wire) * 100 / decoded);
+        return "↓ " + formatBytes(wire) + " / " + formatBytes(decoded) + " (" + savedPercent + "% saved)";
+    }
+
+    static String formatBytes(long bytes) {
+        if (bytes < 1024) return bytes + " B";
+        if (bytes < 1024 * 1024) return String.format("%.1f KB", bytes / 1024.0);
+        return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+
+    private static class Counter {
+        final AtomicLong wireBytes = new AtomicLong();
+        final AtomicLong decodedBytes = new AtomicLong();
+    }
+}
@@ -12,6 +12,12 @@ import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.fish.toucher.model.BookSource;
 import com.fish.toucher.service.BookSourceManager;
+import com.fish.toucher.service.BookshelfUpdateChecker;
+import com.fish.toucher.service.CacheJanitor;
+import com.fish.toucher.service.ChapterCacheManager;
+import com.fish.toucher.service.FetchExecutor;
+import com.fish.toucher.service.SourceHealthTracker;
+import com.fish.toucher.service.TransferStats;
 import com.fish.toucher.ui.dialog.BookSourceEditDialog;
 import java.io.File;
 import java.nio.file.Files;
@@ -89,7 +95,10 @@ public class NovelReaderConfigurable implements Configurable {
 
     // Online book source management
     private JList<String> onlineSourceList;
+    private JSpinner bookshelfCheckIntervalSpinner;
+    private JSpinner cacheQuotaSpinner;
     private DefaultListModel<String> onlineSourceListModel;
+    private JLabel cacheStatsLabel;
 
     @Nls(capitalization = Nls.Capitalization.Title)
     @Override
@@ -353,6 +362,25 @@ public class NovelReaderConfigurable implements Configurable {
         sourceActionPanel.add(deleteSourceBtn);
         novelSettingsPanel.add(sourceActionPanel, ngbc);
 
+        ngbc.gridx = 0; ngbc.gridy = nrow; ngbc.gridwidth = 1;
+        novelSettingsPanel.add(new JLabel("书架更新检查(分钟, 0=关闭):"), ngbc);
+        ngbc.gridx = 1; ngbc.gridy = nrow++;
+        bookshelfCheckIntervalSpinner = new JSpinner(new SpinnerNumberModel(settings.getBookshelfCheckIntervalMinutes(), 0, 1440, 30));
+        novelSettingsPanel.add(bookshelfCheckIntervalSpinner, ngbc);
+
+        ngbc.gridx = 0; ngbc.gridy = nrow; ngbc.gridwidth = 1;
+        novelSettingsPanel.add(new JLabel("章节缓存上限(MB, 0=不限):"), ngbc);
+        ngbc.gridx = 1; ngbc.gridy = nrow++;
+        cacheQuotaSpinner = new JSpinner(new SpinnerNumberModel(settings.getCacheQuotaMb(), 0, 102400, 64));
+        novelSettingsPanel.add(cacheQuotaSpinner, ngbc);
+
+        ngbc.gridx = 0; ngbc.gridy = nrow; ngbc.gridwidth = 1;
+        novelSettingsPanel.add(new JLabel("章节缓存:"), ngbc);
+        ngbc.gridx = 1; ngbc.gridy = nrow++;
+        cacheStatsLabel = new JLabel("统计中...");
+        novelSettingsPanel.add(cacheStatsLabel, ngbc);
+        refreshCacheStats();
+
         // Add novel settings panel to main panel
         gbc.gridx = 0; gbc.gridy = row++; gbc.gridwidth = 2;
         mainPanel.add(novelSettingsPanel, gbc);
@@ -439,6 +467,8 @@ public class NovelReaderConfigurable implements Configurable {
                 || !getSelectedSource().equals(settings.getHotSearchSource())
                 || (int) carouselIntervalSpinner.getValue() != settings.getCarouselIntervalSeconds()
                 || (int) refreshIntervalSpinner.getValue() != settings.getRefreshIntervalMinutes()
+                || (int) bookshelfCheckIntervalSpinner.getValue() != settings.getBookshelfCheckIntervalMinutes()
+                || (int) cacheQuotaSpinner.getValue() != settings.getCacheQuotaMb()
                 || !getSelectedXRegion().equals(settings.getXTrendsRegion())
                 || !getSelectedGoogleGeo().equals(settings.getGoogleTrendsGeo())
                 || (int) stealthCharsPerLineSpinner.getValue() != settings.getStealthCharsPerLine()
@@ -499,6 +529,20 @@ public class NovelReaderConfigurable implements Configurable {
             HotSearchManager.getInstance().applyTimingChanges();
         }
 
+        // Bookshelf update check
+        int oldCheckInterval = settings.getBookshelfCheckIntervalMinutes();
+        settings.setBookshelfCheckIntervalMinutes((int) bookshelfCheckIntervalSpinner.getValue());
+        if (oldCheckInterval != settings.getBookshelfCheckIntervalMinutes()) {
+            BookshelfUpdateChecker.getInstance().reschedule();
+        }
+
+        // Chapter cache quota
+        int oldQuota = settings.getCacheQuotaMb();
+        settings.setCacheQuotaMb((int) cacheQuotaSpinner.getValue());
+        if (oldQuota != settings.getCacheQuotaMb()) {
+            CacheJanitor.getInstance().requestRun();
+        }
+
         // X trends region
         String oldRegion = settings.getXTrendsRegion();
         settings.setXTrendsRegion(getSelectedXRegion());
@@ -578,10 +622,23 @@ public class NovelReaderConfigurable implements Configurable {
         onlineSourceListModel.clear();
         for (BookSource source : BookSourceManager.getInstance().getSources()) {
             String prefix = source.isEnabled() ? "☑ " : "☐ ";
-            onlineSourceListModel.addElement(prefix + source.getName() + "  " + source.getUrl());
+            String traffic = TransferStats.getInstance().describe(source.getName());
+            String health = SourceHealthTracker.getInstance().describe(source.getName());
+            onlineSourceListModel.addElement(prefix + source.getName() + "  " + source.getUrl()
+                    + (health.isEmpty() ? "" : "  " + health)
+                    + (traffic.isEmpty() ? "" : "  " + traffic));
         }
     }
 
+    private void refreshCacheStats() {
+        JLabel label = cacheStatsLabel;
+        // Reads every cached book's index; the settings dialog is modal, so update via Swing directly
+        FetchExecutor.getInstance().execute("cache-stats", () -> {
+            String stats = ChapterCacheManager.getInstance().getCacheStats().describe();
+            SwingUtilities.invokeLater(() -> label.setText(stats));
+        });
+    }
+
     private void importBookSource() {
         javax.swing.JFileChooser chooser = new javax.swing.JFileChooser();
         chooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("JSON files", "json"));
@@ -667,6 +724,8 @@ public class NovelReaderConfigurable implements Configurable {
         }
         carouselIntervalSpinner.setValue(settings.getCarouselIntervalSeconds());
         refreshIntervalSpinner.setValue(settings.getRefreshIntervalMinutes());
+        bookshelfCheckIntervalSpinner.setValue(settings.getBookshelfCheckIntervalMinutes());
+        cacheQuotaSpinner.setValue(settings.getCacheQuotaMb());
         String region = settings.getXTrendsRegion();
         for (int i = 0; i < X_REGION_SLUGS.length; i++) {
             if (X_REGION_SLUGS[i].equals(region)) {
@@ -31,6 +31,10 @@ public class NovelReaderSettings implements PersistentStateComponent<NovelReader
         // --- Hot search timing (seconds/minutes) ---
         public int carouselIntervalSeconds = 10;
         public int refreshIntervalMinutes = 15;
+        // --- Bookshelf update check interval (minutes, 0 = off) ---
+        public int bookshelfCheckIntervalMinutes = 120;
+        // --- Chapter cache quota (MB, 0 = unlimited) ---
+        public int cacheQuotaMb = 512;
         // --- X trends region slug (e.g. "united-states", "japan", "" for worldwide) ---
         public String xTrendsRegion = "";
         // --- Google Trends geo code (e.g. "US", "JP", "CN") ---
@@ -155,6 +159,14 @@ public class NovelReaderSettings implements PersistentStateComponent<NovelReader
     public int getRefreshIntervalMinutes() { return myState.refreshIntervalMinutes; }
     public void setRefreshIntervalMinutes(int m) { myState.refreshIntervalMinutes = Math.max(1, Math.min(120, m)); }
 
+    // --- Bookshelf update check ---
+    public int getBookshelfCheckIntervalMinutes() { return myState.bookshelfCheckIntervalMinutes; }
+    public void setBookshelfCheckIntervalMinutes(int m) { myState.bookshelfCheckIntervalMinutes = Math.max(0, Math.min(1440, m)); }
+
+    // --- Chapter cache quota ---
+    public int getCacheQuotaMb() { return myState.cacheQuotaMb; }
+    public void setCacheQuotaMb(int mb) { myState.cacheQuotaMb = Math.max(0, Math.min(102400, mb)); }
+
     // --- X trends region ---
     public String getXTrendsRegion() { return myState.xTrendsRegion; }
     public void setXTrendsRegion(String region) { myState.xTrendsRegion = region != null ? region : ""; }
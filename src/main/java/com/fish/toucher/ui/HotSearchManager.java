@@ -3,6 +3,7 @@ package com.fish.toucher.ui;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.fish.toucher.FishToucherBundle;
+import com.fish.toucher.service.FetchExecutor;
 import com.fish.toucher.settings.NovelReaderSettings;
 
 import java.net.Proxy;
@@ -45,6 +46,7 @@ public class HotSearchManager {
     private ScheduledExecutorService scheduler;
     private ScheduledFuture<?> refreshTask;
     private ScheduledFuture<?> carouselTask;
+    private Future<?> fetchTask;
 
     private final CopyOnWriteArrayList<Runnable> listeners = new CopyOnWriteArrayList<>();
 
@@ -74,7 +76,8 @@ public class HotSearchManager {
         if (running) return;
         running = true;
         LOG.info("start: starting hot search manager");
-        scheduler = Executors.newScheduledThreadPool(2, r -> {
+        // Only timing runs here; the blocking fetch itself goes to FetchExecutor
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
             Thread t = new Thread(r, "HotSearchManager-pool");
             t.setDaemon(true);
             return t;
@@ -82,13 +85,7 @@ public class HotSearchManager {
 
         long refreshMin = DEFAULT_REFRESH_INTERVAL_MINUTES;
         try { refreshMin = NovelReaderSettings.getInstance().getRefreshIntervalMinutes(); } catch (Exception ignored) {}
-        refreshTask = scheduler.scheduleAtFixedRate(() -> {
-            try {
-                fetchHotSearch();
-            } catch (Exception e) {
-                LOG.error("start: uncaught exception in fetchHotSearch", e);
-            }
-        }, 0, refreshMin, TimeUnit.MINUTES);
+        refreshTask = scheduler.scheduleAtFixedRate(this::refreshAsync, 0, refreshMin, TimeUnit.MINUTES);
     }
 
     public synchronized void stop() {
@@ -98,7 +95,9 @@ public class HotSearchManager {
         if (refreshTask != null) refreshTask.cancel(false);
         if (carouselTask != null) carouselTask.cancel(false);
         if (scheduler != null) scheduler.shutdownNow();
+        if (fetchTask != null) fetchTask.cancel(true);
         scheduler = null;
+        fetchTask = null;
         refreshTask = null;
         carouselTask = null;
     }
@@ -116,10 +115,12 @@ public class HotSearchManager {
             items.clear();
             currentIndex = 0;
             lastRefreshTime = "";
+            // A fetch still running is for the old source
+            if (fetchTask != null) fetchTask.cancel(true);
         }
         fireChange();
         if (scheduler != null && running) {
-            scheduler.submit(this::fetchHotSearch);
+            refreshAsync();
         }
     }
 
@@ -135,6 +136,20 @@ public class HotSearchManager {
 
     // ========== Data fetch ==========
 
+    /**
+     * Start a fetch unless one is already in flight.
+     */
+    private synchronized void refreshAsync() {
+        if (!running || (fetchTask != null && !fetchTask.isDone())) return;
+        fetchTask = FetchExecutor.getInstance().execute("hot-search", () -> {
+            try {
+                fetchHotSearch();
+            } catch (Exception e) {
+                LOG.error("refreshAsync: uncaught exception in fetchHotSearch", e);
+            }
+        });
+    }
+
     private void fetchHotSearch() {
         String source = NovelReaderSettings.getInstance().getHotSearchSource();
         LOG.info("fetchHotSearch: fetching from source: " + source);
@@ -452,7 +467,7 @@ public class HotSearchManager {
 
     public void manualRefresh() {
         if (scheduler != null && running) {
-            scheduler.submit(this::fetchHotSearch);
+            refreshAsync();
         }
     }
 
@@ -21,8 +21,8 @@ public class NovelReaderManager {
     private static final Logger LOG = Logger.getInstance(NovelReaderManager.class);
     private static final NovelReaderManager INSTANCE = new NovelReaderManager();
 
-    /** Raw lines from file. */
-    private final List<String> rawLines = new ArrayList<>();
+    /** Raw lines from file; never modified, only replaced. */
+    private List<String> rawLines = new ArrayList<>();
     private String currentFilePath = "";
     private boolean visible = true;
 
@@ -129,8 +129,7 @@ public class NovelReaderManager {
             return false;
         }
 
-        rawLines.clear();
-        rawLines.addAll(newLines);
+        rawLines = newLines;
         currentFilePath = filePath;
 
         // Restore unified reading progress
@@ -149,11 +148,11 @@ public class NovelReaderManager {
     /**
      * Load content from lines directly (for online sources).
      * @param virtualPath a virtual identifier like "online://sourceName/bookName/chapter"
-     * @param lines the content lines to display
+     * @param lines the content lines to display; kept as they are, not copied, so cached chapters
+     *              are decoded a line at a time as they are shown. The list must not change afterwards.
      */
     public void loadFromLines(String virtualPath, List<String> lines) {
-        rawLines.clear();
-        rawLines.addAll(lines);
+        rawLines = lines;
         currentFilePath = virtualPath;
         currentLine = 0;
         visible = true;
@@ -38,17 +38,28 @@ public class BookSourceEditDialog extends DialogWrapper {
     private final JTextField chapterListField = new JTextField();
     private final JTextField chapterNameField = new JTextField();
     private final JTextField chapterChapterUrlField = new JTextField();
+    private final JTextField chapterNextPageField = new JTextField();
+    private final JTextField chapterPageUrlField = new JTextField();
+    private final JTextField chapterPageCountField = new JTextField();
+    private final JTextField chapterTtlField = new JTextField();
 
     // Content rule
     private final JTextField contentUrlField = new JTextField();
     private final JComboBox<String> contentTypeCombo = new JComboBox<>(new String[]{"html", "json"});
     private final JTextField contentSelectorField = new JTextField();
     private final JTextField contentPurifyField = new JTextField();
+    private final JCheckBox contentStreamCheckBox = new JCheckBox("\u8fb9\u4e0b\u8f7d\u8fb9\u89e3\u6790");
+    private final JTextField contentNextPageField = new JTextField();
+    private final JTextField contentPageUrlField = new JTextField();
+    private final JTextField contentPageCountField = new JTextField();
 
+    @Nullable
+    private final BookSource existing;
     private BookSource result;
 
     public BookSourceEditDialog(@Nullable BookSource existing) {
         super((Project) null, true);
+        this.existing = existing;
         setTitle(existing != null ? "\u7f16\u8f91\u4e66\u6e90" : "\u65b0\u5efa\u4e66\u6e90");
         init();
         if (existing != null) {
@@ -101,6 +112,11 @@ public class BookSourceEditDialog extends DialogWrapper {
         row = addField(form, gbc, row, "\u5217\u8868\u9009\u62e9\u5668:", chapterListField, null);
         row = addField(form, gbc, row, "\u7ae0\u8282\u540d:", chapterNameField, null);
         row = addField(form, gbc, row, "\u7ae0\u8282URL:", chapterChapterUrlField, null);
+        row = addField(form, gbc, row, "\u4e0b\u4e00\u9875:", chapterNextPageField, "\u683c\u5f0f: a.next@href\uff0c\u7559\u7a7a\u5219\u4e0d\u7ffb\u9875");
+        row = addField(form, gbc, row, "\u5206\u9875URL:", chapterPageUrlField, "\u4f7f\u7528 {{bookUrl}} \u548c {{page}} \u4f5c\u4e3a\u5360\u4f4d\u7b26");
+        row = addField(form, gbc, row, "\u603b\u9875\u6570:", chapterPageCountField, "\u7b2c\u4e00\u9875\u4e0a\u7684\u9875\u6570\u6587\u672c\uff0c\u53d6\u6700\u540e\u4e00\u4e2a\u6570\u5b57");
+        row = addField(form, gbc, row, "\u76ee\u5f55\u6709\u6548\u671f:", chapterTtlField,
+                "\u5206\u949f\uff0c\u7559\u7a7a\u4e3a 24 \u5c0f\u65f6\uff1b\u5df2\u5b8c\u7ed3\u7684\u4e66\u56fa\u5b9a\u4e3a 30 \u5929");
 
         // ── Content Rule ────────────────────────────────────────────────────────
         row = addSectionTitle(form, gbc, row, "\u6b63\u6587\u89c4\u5219");
@@ -109,6 +125,11 @@ public class BookSourceEditDialog extends DialogWrapper {
         row = addField(form, gbc, row, "\u6b63\u6587\u9009\u62e9\u5668:", contentSelectorField, null);
         row = addField(form, gbc, row, "\u8fc7\u6ee4\u9009\u62e9\u5668:", contentPurifyField,
                 "\u9017\u53f7\u5206\u9694\u7684CSS\u9009\u62e9\u5668\uff0c\u5982: script, div.ad");
+        row = addField(form, gbc, row, "\u6d41\u5f0f\u89e3\u6790:", contentStreamCheckBox,
+                "\u4ec5 html: \u5339\u914d\u5230\u6b63\u6587\u540e\u505c\u6b62\u8bfb\u53d6\u9875\u9762\uff0c\u4e0d\u6784\u5efa\u5b8c\u6574 DOM");
+        row = addField(form, gbc, row, "\u4e0b\u4e00\u9875:", contentNextPageField, "\u683c\u5f0f: a.next@href\uff0c\u7559\u7a7a\u5219\u4e0d\u7ffb\u9875");
+        row = addField(form, gbc, row, "\u5206\u9875URL:", contentPageUrlField, "\u4f7f\u7528 {{chapterUrl}} \u548c {{page}} \u4f5c\u4e3a\u5360\u4f4d\u7b26");
+        row = addField(form, gbc, row, "\u603b\u9875\u6570:", contentPageCountField, null);
 
         // vertical glue so everything stays top-aligned
         gbc.gridx = 0;
@@ -200,6 +221,10 @@ public class BookSourceEditDialog extends DialogWrapper {
             chapterListField.setText(nullToEmpty(cr.getList()));
             chapterNameField.setText(nullToEmpty(cr.getName()));
             chapterChapterUrlField.setText(nullToEmpty(cr.getChapterUrl()));
+            chapterNextPageField.setText(nullToEmpty(cr.getNextPage()));
+            chapterPageUrlField.setText(nullToEmpty(cr.getPageUrlTemplate()));
+            chapterPageCountField.setText(nullToEmpty(cr.getPageCount()));
+            chapterTtlField.setText(cr.getTtlMinutes() > 0 ? String.valueOf(cr.getTtlMinutes()) : "");
         }
 
         BookSource.ContentRule cont = source.getContentRule();
@@ -210,6 +235,10 @@ public class BookSourceEditDialog extends DialogWrapper {
             if (cont.getPurify() != null) {
                 contentPurifyField.setText(String.join(", ", cont.getPurify()));
             }
+            contentStreamCheckBox.setSelected(cont.isStream());
+            contentNextPageField.setText(nullToEmpty(cont.getNextPage()));
+            contentPageUrlField.setText(nullToEmpty(cont.getPageUrlTemplate()));
+            contentPageCountField.setText(nullToEmpty(cont.getPageCount()));
         }
     }
 
@@ -267,6 +296,10 @@ public class BookSourceEditDialog extends DialogWrapper {
         cr.setList(chapterListField.getText().trim());
         cr.setName(chapterNameField.getText().trim());
         cr.setChapterUrl(chapterChapterUrlField.getText().trim());
+        cr.setNextPage(chapterNextPageField.getText().trim());
+        cr.setPageUrlTemplate(chapterPageUrlField.getText().trim());
+        cr.setPageCount(chapterPageCountField.getText().trim());
+        cr.setTtlMinutes(parseMinutes(chapterTtlField.getText()));
         source.setChapterRule(cr);
 
         // Content rule
@@ -284,8 +317,25 @@ public class BookSourceEditDialog extends DialogWrapper {
             }
             cont.setPurify(purifyList);
         }
+        cont.setStream(contentStreamCheckBox.isSelected());
+        cont.setNextPage(contentNextPageField.getText().trim());
+        cont.setPageUrlTemplate(contentPageUrlField.getText().trim());
+        cont.setPageCount(contentPageCountField.getText().trim());
         source.setContentRule(cont);
 
+        // Settings without a form field are carried over from the source being edited
+        if (existing != null) {
+            source.setRateLimit(existing.getRateLimit());
+            source.setJsonProvider(existing.getJsonProvider());
+            source.setMirror(existing.getMirror());
+            if (existing.getSearchRule() != null) sr.setLimits(existing.getSearchRule().getLimits());
+            if (existing.getChapterRule() != null) {
+                cr.setLimits(existing.getChapterRule().getLimits());
+                cr.setFinishedPattern(existing.getChapterRule().getFinishedPattern());
+            }
+            if (existing.getContentRule() != null) cont.setLimits(existing.getContentRule().getLimits());
+        }
+
         return source;
     }
 
@@ -302,6 +352,15 @@ public class BookSourceEditDialog extends DialogWrapper {
         return s != null ? s : "";
     }
 
+    /** A positive number of minutes, or 0 (the default) for anything else. */
+    private static int parseMinutes(String text) {
+        try {
+            return Math.max(0, Integer.parseInt(text.trim()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
     private static void setComboSelection(JComboBox<String> combo, @Nullable String value) {
         if (value == null) return;
         for (int i = 0; i < combo.getItemCount(); i++) {
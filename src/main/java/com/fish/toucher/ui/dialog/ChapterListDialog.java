@@ -6,9 +6,11 @@ import com.fish.toucher.model.ChapterInfo;
 import com.fish.toucher.service.BookSourceManager;
 import com.fish.toucher.service.BookshelfManager;
 import com.fish.toucher.service.ChapterCacheManager;
+import com.fish.toucher.service.ChapterListDiff;
+import com.fish.toucher.service.FetchException;
+import com.fish.toucher.service.FetchScope;
 import com.fish.toucher.service.OnlineBookFetcher;
 import com.fish.toucher.ui.NovelReaderManager;
-import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.DialogWrapper;
@@ -17,8 +19,8 @@ import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 
 public class ChapterListDialog extends DialogWrapper {
 
@@ -26,6 +28,8 @@ public class ChapterListDialog extends DialogWrapper {
 
     private final BookshelfItem book;
     private final BookSource bookSource;
+    /** Loads started by this dialog; aborted when it closes. */
+    private final FetchScope fetchScope;
 
     private JList<ChapterInfo> chapterList;
     private DefaultListModel<ChapterInfo> listModel;
@@ -35,6 +39,7 @@ public class ChapterListDialog extends DialogWrapper {
         super(project, true);
         this.book = book;
         this.bookSource = findBookSource(book.getSourceName());
+        this.fetchScope = new FetchScope(getDisposable());
 
         setTitle(book.getName() + " - \u7ae0\u8282\u76ee\u5f55");
         setOKButtonText("Close");
@@ -97,47 +102,29 @@ public class ChapterListDialog extends DialogWrapper {
             return;
         }
 
-        ApplicationManager.getApplication().executeOnPooledThread(() -> {
+        fetchScope.launch(FetchScope.Stage.CATALOG, () -> {
             try {
                 String bookUrl = book.getBookUrl();
                 ChapterCacheManager cacheManager = ChapterCacheManager.getInstance();
 
-                List<ChapterInfo> chapters = cacheManager.getCachedChapterList(bookUrl);
-                if (chapters == null) {
-                    updateStatus("Fetching chapter list...");
-                    OnlineBookFetcher fetcher = new OnlineBookFetcher();
-                    chapters = fetcher.fetchChapterList(bookSource, bookUrl);
-                    if (chapters != null && !chapters.isEmpty()) {
-                        cacheManager.cacheChapterList(bookUrl, chapters);
+                // A cached list is shown right away, however old; a stale one is revalidated behind it
+                ChapterCacheManager.CachedChapterList cached = cacheManager.getCachedChapterList(bookUrl, bookSource);
+                if (cached != null) {
+                    fetchScope.invokeLater(() -> showChapters(cached.chapters()));
+                    if (!cached.stale()) {
+                        return;
                     }
+                    updateStatus("\u5171 " + cached.chapters().size() + " \u7ae0\uff0c\u6b63\u5728\u68c0\u67e5\u66f4\u65b0...");
+                } else {
+                    updateStatus("Fetching chapter list...");
                 }
-
-                final List<ChapterInfo> finalChapters = chapters;
-                ApplicationManager.getApplication().invokeLater(() -> {
-                    listModel.clear();
-                    if (finalChapters != null) {
-                        for (ChapterInfo chapter : finalChapters) {
-                            listModel.addElement(chapter);
-                        }
-                    }
-
-                    int total = listModel.getSize();
-                    if (total == 0) {
-                        statusLabel.setText("\u672a\u83b7\u53d6\u5230\u7ae0\u8282\u5217\u8868\uff0c\u8bf7\u68c0\u67e5\uff1a\u2460\u4e66\u6e90\u89c4\u5219\u662f\u5426\u6b63\u786e \u2461\u662f\u5426\u9700\u8981 Cookie \u2462\u7f51\u7edc\u662f\u5426\u6b63\u5e38");
-                    } else {
-                        statusLabel.setText("\u5171 " + total + " \u7ae0");
-                    }
-
-                    // Scroll to last read chapter
-                    int lastRead = book.getLastReadChapter();
-                    if (lastRead >= 0 && lastRead < total) {
-                        chapterList.ensureIndexIsVisible(lastRead);
-                        chapterList.setSelectedIndex(lastRead);
-                        // Clear selection so it doesn't trigger loading immediately
-                        chapterList.clearSelection();
-                        chapterList.ensureIndexIsVisible(lastRead);
-                    }
-                });
+                OnlineBookFetcher fetcher = new OnlineBookFetcher();
+                ChapterListDiff diff = fetcher.refreshChapterList(bookSource, bookUrl);
+                if (!diff.getChapters().isEmpty() && diff.getChapters().size() != book.getTotalChapters()) {
+                    BookshelfManager.getInstance().updateTotalChapters(Map.of(bookUrl, diff.getChapters().size()));
+                }
+                FetchException error = fetcher.getLastError();
+                fetchScope.invokeLater(() -> applyRefresh(diff, error));
             } catch (Exception e) {
                 LOG.warn("Failed to load chapters", e);
                 String msg = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
@@ -146,6 +133,74 @@ public class ChapterListDialog extends DialogWrapper {
         });
     }
 
+    private void showChapters(@NotNull List<ChapterInfo> chapters) {
+        listModel.clear();
+        listModel.addAll(chapters);
+        updateChapterCount(0);
+
+        // Scroll to last read chapter
+        int total = listModel.getSize();
+        int lastRead = book.getLastReadChapter();
+        if (lastRead >= 0 && lastRead < total) {
+            chapterList.ensureIndexIsVisible(lastRead);
+            chapterList.setSelectedIndex(lastRead);
+            // Clear selection so it doesn't trigger loading immediately
+            chapterList.clearSelection();
+            chapterList.ensureIndexIsVisible(lastRead);
+        }
+    }
+
+    /**
+     * Bring the list in line with a refreshed catalog without resetting it: new chapters are
+     * appended to what is shown, a renumbered catalog is written over it row by row, so a refresh
+     * that lands while the user browses keeps the scroll position.
+     */
+    private void applyRefresh(@NotNull ChapterListDiff diff, @Nullable FetchException error) {
+        if (diff.getChapters().isEmpty()) {
+            // Refresh failed; keep the expired list if one is shown
+            updateChapterCount(0);
+            if (error != null && listModel.isEmpty()) {
+                statusLabel.setText("\u52a0\u8f7d\u5931\u8d25: " + error.getUserMessage());
+            }
+            return;
+        }
+        if (listModel.isEmpty()) {
+            showChapters(diff.getChapters());
+        } else if (diff.isAppendOnly() && listModel.getSize() == diff.getPreviousSize()) {
+            listModel.addAll(diff.getAdded());
+            updateChapterCount(diff.getAdded().size());
+        } else {
+            replaceChapters(diff.getChapters());
+            updateChapterCount(0);
+        }
+    }
+
+    private void replaceChapters(@NotNull List<ChapterInfo> chapters) {
+        // The selected row may now hold another chapter
+        chapterList.clearSelection();
+        int shown = listModel.getSize();
+        int common = Math.min(shown, chapters.size());
+        for (int i = 0; i < common; i++) {
+            listModel.set(i, chapters.get(i));
+        }
+        if (shown > chapters.size()) {
+            listModel.removeRange(chapters.size(), shown - 1);
+        } else if (shown < chapters.size()) {
+            listModel.addAll(chapters.subList(shown, chapters.size()));
+        }
+    }
+
+    private void updateChapterCount(int added) {
+        int total = listModel.getSize();
+        if (total == 0) {
+            statusLabel.setText("\u672a\u83b7\u53d6\u5230\u7ae0\u8282\u5217\u8868\uff0c\u8bf7\u68c0\u67e5\uff1a\u2460\u4e66\u6e90\u89c4\u5219\u662f\u5426\u6b63\u786e \u2461\u662f\u5426\u9700\u8981 Cookie \u2462\u7f51\u7edc\u662f\u5426\u6b63\u5e38");
+        } else if (added > 0) {
+            statusLabel.setText("\u5171 " + total + " \u7ae0\uff08\u65b0\u589e " + added + " \u7ae0\uff09");
+        } else {
+            statusLabel.setText("\u5171 " + total + " \u7ae0");
+        }
+    }
+
     private void loadChapterContent(@NotNull ChapterInfo chapter) {
         if (bookSource == null) {
             statusLabel.setText("Book source not found");
@@ -154,22 +209,31 @@ public class ChapterListDialog extends DialogWrapper {
 
         statusLabel.setText("Loading: " + chapter.getName() + "...");
 
-        ApplicationManager.getApplication().executeOnPooledThread(() -> {
+        fetchScope.launch(FetchScope.Stage.CONTENT, () -> {
             try {
                 String bookUrl = book.getBookUrl();
                 ChapterCacheManager cacheManager = ChapterCacheManager.getInstance();
 
                 // Try cache first
-                String cachedContent = cacheManager.getCachedContent(bookUrl, chapter.getIndex());
+                List<String> cachedLines = cacheManager.getCachedLines(bookUrl, chapter);
                 List<String> lines;
-                if (cachedContent != null) {
-                    lines = Arrays.asList(cachedContent.split("\n"));
+                if (cachedLines != null) {
+                    lines = cachedLines;
                 } else {
                     updateStatus("Fetching content...");
                     OnlineBookFetcher fetcher = new OnlineBookFetcher();
                     lines = fetcher.fetchContent(bookSource, chapter.getChapterUrl());
-                    if (lines != null && !lines.isEmpty()) {
-                        cacheManager.cacheContent(bookUrl, chapter.getIndex(), String.join("\n", lines));
+                    if (fetchScope.isCancelled()) {
+                        // Another chapter was selected or the dialog closed meanwhile
+                        return;
+                    }
+                    FetchException error = fetcher.getLastError();
+                    if (lines.isEmpty() && error != null) {
+                        updateStatus("Failed to load " + chapter.getName() + ": " + error.getUserMessage());
+                        return;
+                    }
+                    if (!lines.isEmpty()) {
+                        cacheManager.cacheLines(bookUrl, chapter, lines);
                     }
                 }
 
@@ -180,7 +244,7 @@ public class ChapterListDialog extends DialogWrapper {
 
                 String virtualPath = "online://" + book.getSourceName() + "/" + book.getName() + "/" + chapter.getName();
 
-                ApplicationManager.getApplication().invokeLater(() -> {
+                fetchScope.invokeLater(() -> {
                     NovelReaderManager.getInstance().loadFromLines(virtualPath, lines);
                     BookshelfManager.getInstance().updateProgress(book, chapter.getIndex(), chapter.getName());
                     statusLabel.setText("Loaded: " + chapter.getName());
@@ -194,7 +258,7 @@ public class ChapterListDialog extends DialogWrapper {
     }
 
     private void updateStatus(@NotNull String text) {
-        ApplicationManager.getApplication().invokeLater(() -> statusLabel.setText(text));
+        fetchScope.invokeLater(() -> statusLabel.setText(text));
     }
 
     /**
@@ -6,8 +6,10 @@ import com.fish.toucher.model.SearchResult;
 import com.fish.toucher.service.BookSourceManager;
 import com.fish.toucher.service.BookshelfManager;
 import com.fish.toucher.service.ChapterCacheManager;
+import com.fish.toucher.service.FetchException;
+import com.fish.toucher.service.FetchExecutor;
+import com.fish.toucher.service.FetchScope;
 import com.fish.toucher.service.OnlineBookFetcher;
-import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.DialogWrapper;
@@ -20,16 +22,24 @@ import java.awt.*;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class OnlineBookDialog extends DialogWrapper {
 
     private static final Logger LOG = Logger.getInstance(OnlineBookDialog.class);
+    /** Source combo entry that searches every enabled source. */
+    private static final String ALL_SOURCES = "\u5168\u90e8\u4e66\u6e90";
 
     private final Project project;
+    /** Searches started by this dialog; a new search or closing the dialog aborts the running one. */
+    private final FetchScope fetchScope;
 
     // Bookshelf tab components
     private JList<BookshelfItem> bookshelfList;
     private DefaultListModel<BookshelfItem> bookshelfModel;
+    /** Cached chapters per book URL, filled in the background from the cache manifests. */
+    private final Map<String, Integer> cachedCounts = new ConcurrentHashMap<>();
 
     // Search tab components
     private JComboBox<String> sourceComboBox;
@@ -41,6 +51,7 @@ public class OnlineBookDialog extends DialogWrapper {
     public OnlineBookDialog(@Nullable Project project) {
         super(project);
         this.project = project;
+        this.fetchScope = new FetchScope(getDisposable());
         setTitle("\u5728\u7ebf\u4e66\u6e90");
         init();
         refreshBookshelf();
@@ -73,7 +84,7 @@ public class OnlineBookDialog extends DialogWrapper {
         bookshelfModel = new DefaultListModel<>();
         bookshelfList = new JList<>(bookshelfModel);
         bookshelfList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
-        bookshelfList.setCellRenderer(new BookshelfCellRenderer());
+        bookshelfList.setCellRenderer(new BookshelfCellRenderer(cachedCounts));
 
         JScrollPane scrollPane = new JScrollPane(bookshelfList);
         panel.add(scrollPane, BorderLayout.CENTER);
@@ -102,9 +113,20 @@ public class OnlineBookDialog extends DialogWrapper {
 
     private void refreshBookshelf() {
         bookshelfModel.clear();
-        for (BookshelfItem item : BookshelfManager.getInstance().getBooks()) {
+        List<BookshelfItem> books = BookshelfManager.getInstance().getBooks();
+        for (BookshelfItem item : books) {
             bookshelfModel.addElement(item);
         }
+        // The first lookup of a book reads its manifest; keep that off the EDT
+        FetchExecutor.getInstance().execute("bookshelf-counts", () -> {
+            ChapterCacheManager cacheManager = ChapterCacheManager.getInstance();
+            for (BookshelfItem item : books) {
+                if (item.getBookUrl() != null) {
+                    cachedCounts.put(item.getBookUrl(), cacheManager.getCachedChapterCount(item.getBookUrl()));
+                }
+            }
+            fetchScope.invokeLater(bookshelfList::repaint);
+        });
     }
 
     private void continueReading() {
@@ -136,14 +158,21 @@ public class OnlineBookDialog extends DialogWrapper {
             Messages.showInfoMessage(project, "\u8bf7\u5148\u9009\u62e9\u4e00\u672c\u4e66", "\u63d0\u793a");
             return;
         }
-        ChapterCacheManager.getInstance().clearCache(selected.getBookUrl());
-        Messages.showInfoMessage(project,
-                "\u5df2\u6e05\u9664\u300c" + selected.getName() + "\u300d\u7684\u7f13\u5b58",
-                "\u6e05\u9664\u7f13\u5b58");
+        // Deletes the book's whole cache directory; keep the file I/O off the EDT
+        FetchExecutor.getInstance().execute("clear-cache", () -> {
+            ChapterCacheManager.getInstance().clearCache(selected.getBookUrl());
+            cachedCounts.remove(selected.getBookUrl());
+            fetchScope.invokeLater(() -> {
+                bookshelfList.repaint();
+                Messages.showInfoMessage(project,
+                        "\u5df2\u6e05\u9664\u300c" + selected.getName() + "\u300d\u7684\u7f13\u5b58",
+                        "\u6e05\u9664\u7f13\u5b58");
+            });
+        });
     }
 
     private void addManualBook() {
-        List<BookSource> sources = BookSourceManager.getInstance().getSources();
+        List<BookSource> sources = BookSourceManager.getInstance().getSourcesByHealth();
         if (sources.isEmpty()) {
             Messages.showErrorDialog(project, "\u8bf7\u5148\u5bfc\u5165\u4e66\u6e90\u518d\u6dfb\u52a0\u4e66\u7c4d", "\u65e0\u53ef\u7528\u4e66\u6e90");
             return;
@@ -196,12 +225,15 @@ public class OnlineBookDialog extends DialogWrapper {
         JPanel topBar = new JPanel(new BorderLayout(4, 0));
         topBar.setBorder(BorderFactory.createEmptyBorder(4, 4, 4, 4));
 
-        // Build source combo
-        List<BookSource> enabledSources = BookSourceManager.getInstance().getEnabledSources();
-        String[] sourceNames = enabledSources.stream()
-                .map(BookSource::getName)
-                .toArray(String[]::new);
-        sourceComboBox = new JComboBox<>(sourceNames);
+        // Build source combo: "all sources" first, then the healthiest sources
+        List<BookSource> enabledSources = BookSourceManager.getInstance().getEnabledSourcesByHealth();
+        sourceComboBox = new JComboBox<>();
+        if (enabledSources.size() > 1) {
+            sourceComboBox.addItem(ALL_SOURCES);
+        }
+        for (BookSource source : enabledSources) {
+            sourceComboBox.addItem(source.getName());
+        }
         sourceComboBox.setPreferredSize(new Dimension(130, 28));
 
         searchField = new JTextField();
@@ -264,12 +296,13 @@ public class OnlineBookDialog extends DialogWrapper {
         }
 
         String selectedSourceName = (String) sourceComboBox.getSelectedItem();
+        boolean searchAll = ALL_SOURCES.equals(selectedSourceName);
         BookSource targetSource = enabledSources.stream()
                 .filter(s -> s.getName().equals(selectedSourceName))
                 .findFirst()
                 .orElse(null);
 
-        if (targetSource == null) {
+        if (targetSource == null && !searchAll) {
             updateSearchStatus("\u672a\u627e\u5230\u6240\u9009\u4e66\u6e90");
             return;
         }
@@ -278,14 +311,19 @@ public class OnlineBookDialog extends DialogWrapper {
         searchResultModel.clear();
 
         final BookSource source = targetSource;
-        ApplicationManager.getApplication().executeOnPooledThread(() -> {
+        fetchScope.launch(FetchScope.Stage.SEARCH, () -> {
             try {
                 OnlineBookFetcher fetcher = new OnlineBookFetcher();
-                List<SearchResult> results = fetcher.search(source, keyword);
+                List<SearchResult> results = searchAll
+                        ? fetcher.searchAll(enabledSources, keyword)
+                        : fetcher.search(source, keyword);
+                FetchException error = fetcher.getLastError();
 
-                ApplicationManager.getApplication().invokeLater(() -> {
+                fetchScope.invokeLater(() -> {
                     searchResultModel.clear();
-                    if (results == null || results.isEmpty()) {
+                    if ((results == null || results.isEmpty()) && error != null) {
+                        updateSearchStatus("\u641c\u7d22\u5931\u8d25: " + error.getUserMessage());
+                    } else if (results == null || results.isEmpty()) {
                         updateSearchStatus("\u672a\u627e\u5230\u76f8\u5173\u4e66\u7c4d");
                     } else {
                         for (SearchResult r : results) {
@@ -296,7 +334,7 @@ public class OnlineBookDialog extends DialogWrapper {
                 });
             } catch (Exception e) {
                 LOG.warn("Search failed", e);
-                ApplicationManager.getApplication().invokeLater(() ->
+                fetchScope.invokeLater(() ->
                         updateSearchStatus("\u641c\u7d22\u5931\u8d25: " + e.getMessage()));
             }
         });
@@ -337,8 +375,10 @@ public class OnlineBookDialog extends DialogWrapper {
 
         private final JLabel titleLabel;
         private final JLabel detailLabel;
+        private final Map<String, Integer> cachedCounts;
 
-        BookshelfCellRenderer() {
+        BookshelfCellRenderer(Map<String, Integer> cachedCounts) {
+            this.cachedCounts = cachedCounts;
             setLayout(new BorderLayout());
             setBorder(BorderFactory.createEmptyBorder(4, 6, 4, 6));
 
@@ -366,7 +406,10 @@ public class OnlineBookDialog extends DialogWrapper {
                 int lastChapter = value.getLastReadChapter();
                 int total = value.getTotalChapters();
                 String lastChapterName = value.getLastChapterName() != null ? value.getLastChapterName() : "";
-                detailLabel.setText("Source: " + source + " | Chapter " + lastChapter + "/" + total + " | " + lastChapterName);
+                Integer cached = value.getBookUrl() != null ? cachedCounts.get(value.getBookUrl()) : null;
+                String cachedText = cached != null && cached > 0
+                        ? String.format(" | Cached %,d/%,d", cached, Math.max(cached, total)) : "";
+                detailLabel.setText("Source: " + source + " | Chapter " + lastChapter + "/" + total + cachedText + " | " + lastChapterName);
             }
 
             if (isSelected) {
@@ -395,7 +438,8 @@ public class OnlineBookDialog extends DialogWrapper {
             if (value instanceof SearchResult result) {
                 String name = result.getName() != null ? result.getName() : "";
                 String author = result.getAuthor() != null ? result.getAuthor() : "";
-                setText(name + " - " + author);
+                String source = result.getSourceName() != null ? "  [" + result.getSourceName() + "]" : "";
+                setText(name + " - " + author + source);
             }
             return this;
         }
@@ -0,0 +1,146 @@
+package com.fish.toucher.service;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BookSegmentStoreTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void readsBackWhatWasWrittenAfterReopening() throws IOException {
+        Path dir = temp.getRoot().toPath();
+        try (BookSegmentStore store = BookSegmentStore.open(dir)) {
+            store.write(1L, bytes("first"), 50);
+            store.write(2L, bytes("second"), 60);
+            assertArrayEquals(bytes("first"), store.read(1L));
+            assertNull(store.read(3L));
+        }
+        try (BookSegmentStore store = BookSegmentStore.open(dir)) {
+            assertEquals(2, store.size());
+            assertArrayEquals(bytes("first"), store.read(1L));
+            assertArrayEquals(bytes("second"), store.read(2L));
+            assertEquals("first".length() + "second".length(), store.liveBytes());
+            assertEquals(110, store.rawBytes());
+        }
+    }
+
+    @Test
+    public void laterRecordsOverrideEarlierOnes() throws IOException {
+        Path dir = temp.getRoot().toPath();
+        try (BookSegmentStore store = BookSegmentStore.open(dir)) {
+            store.write(1L, bytes("old"), 3);
+            store.write(2L, bytes("removed"), 7);
+            store.write(1L, bytes("new"), 3);
+            store.remove(2L);
+        }
+        try (BookSegmentStore store = BookSegmentStore.open(dir)) {
+            assertArrayEquals(bytes("new"), store.read(1L));
+            assertFalse(store.contains(2L));
+            assertEquals(3, store.liveBytes());
+            // The replaced and removed bytes are garbage until compaction
+            assertEquals("old".length() + "removed".length() + "new".length(), store.diskBytes());
+        }
+    }
+
+    @Test
+    public void evictionCompactsTheSegment() throws IOException {
+        Path dir = temp.getRoot().toPath();
+        byte[] chapter = new byte[64 * 1024];
+        try (BookSegmentStore store = BookSegmentStore.open(dir)) {
+            List<Long> odd = new ArrayList<>();
+            for (long key = 0; key < 10; key++) {
+                Arrays.fill(chapter, (byte) key);
+                store.write(key, chapter, chapter.length);
+                if (key % 2 == 1) {
+                    odd.add(key);
+                }
+            }
+            long freed = store.evict(odd);
+            assertEquals(5L * chapter.length, freed);
+            assertEquals(5L * chapter.length, store.diskBytes());
+            assertEquals(store.liveBytes(), Files.size(dir.resolve(BookSegmentStore.SEGMENT_FILE)));
+        }
+        try (BookSegmentStore store = BookSegmentStore.open(dir)) {
+            assertEquals(5, store.size());
+            for (long key = 0; key < 10; key += 2) {
+                Arrays.fill(chapter, (byte) key);
+                assertArrayEquals(chapter, store.read(key));
+            }
+            assertFalse(store.contains(1L));
+        }
+    }
+
+    @Test
+    public void compactingAnEmptyStoreDeletesItsFiles() throws IOException {
+        Path dir = temp.getRoot().toPath();
+        try (BookSegmentStore store = BookSegmentStore.open(dir)) {
+            store.write(1L, bytes("only"), 4);
+            store.evict(List.of(1L));
+        }
+        assertFalse(Files.exists(dir.resolve(BookSegmentStore.SEGMENT_FILE)));
+        assertFalse(Files.exists(dir.resolve(BookSegmentStore.INDEX_FILE)));
+    }
+
+    @Test
+    public void checksumMismatchDropsTheChapter() throws IOException {
+        Path dir = temp.getRoot().toPath();
+        try (BookSegmentStore store = BookSegmentStore.open(dir)) {
+            store.write(1L, bytes("intact"), 6);
+            store.write(2L, bytes("damaged"), 7);
+        }
+        // Flip a byte of the second chapter
+        try (FileChannel segment = FileChannel.open(dir.resolve(BookSegmentStore.SEGMENT_FILE), StandardOpenOption.WRITE)) {
+            segment.write(ByteBuffer.wrap(new byte[]{'X'}), "intact".length());
+        }
+        try (BookSegmentStore store = BookSegmentStore.open(dir)) {
+            assertNull(store.read(2L));
+            assertFalse(store.contains(2L));
+            assertArrayEquals(bytes("intact"), store.read(1L));
+        }
+        try (BookSegmentStore store = BookSegmentStore.open(dir)) {
+            assertFalse(store.contains(2L));
+            assertTrue(store.contains(1L));
+        }
+    }
+
+    @Test
+    public void tornIndexRecordIsIgnored() throws IOException {
+        Path dir = temp.getRoot().toPath();
+        try (BookSegmentStore store = BookSegmentStore.open(dir)) {
+            store.write(1L, bytes("kept"), 4);
+        }
+        Files.write(dir.resolve(BookSegmentStore.INDEX_FILE), new byte[]{1, 2, 3}, StandardOpenOption.APPEND);
+        try (BookSegmentStore store = BookSegmentStore.open(dir)) {
+            assertArrayEquals(bytes("kept"), store.read(1L));
+            store.write(2L, bytes("after"), 5);
+        }
+        try (BookSegmentStore store = BookSegmentStore.open(dir)) {
+            assertArrayEquals(bytes("kept"), store.read(1L));
+            assertArrayEquals(bytes("after"), store.read(2L));
+        }
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,76 @@
+package com.fish.toucher.service;
+
+import com.fish.toucher.model.ChapterInfo;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class ChapterKeysTest {
+
+    private static final String URL = "https://www.example.com/book/12/345.html";
+
+    @Test
+    public void spellingsOfOneUrlNormalizeAlike() {
+        String expected = ChapterKeys.normalize(URL);
+        assertEquals(expected, ChapterKeys.normalize("http://www.example.com/book/12/345.html"));
+        assertEquals(expected, ChapterKeys.normalize("https://WWW.Example.COM/book/12/345.html"));
+        assertEquals(expected, ChapterKeys.normalize("https://www.example.com:443/book/12/345.html"));
+        assertEquals(expected, ChapterKeys.normalize("http://www.example.com:80/book/12/345.html"));
+        assertEquals(expected, ChapterKeys.normalize("https://www.example.com//book/12//345.html"));
+        assertEquals(expected, ChapterKeys.normalize("https://www.example.com/book/12/345.html/"));
+        assertEquals(expected, ChapterKeys.normalize("https://www.example.com/book/12/345.html#top"));
+        assertEquals(expected, ChapterKeys.normalize("  " + URL + "\n"));
+    }
+
+    @Test
+    public void queryParametersAreSorted() {
+        assertEquals(ChapterKeys.normalize("https://example.com/read?book=12&chapter=345"),
+                ChapterKeys.normalize("https://example.com/read?chapter=345&book=12"));
+    }
+
+    @Test
+    public void differentChaptersStayApart() {
+        String expected = ChapterKeys.normalize(URL);
+        assertNotEquals(expected, ChapterKeys.normalize("https://www.example.com/book/12/346.html"));
+        assertNotEquals(expected, ChapterKeys.normalize("https://www.example.com:8080/book/12/345.html"));
+        assertNotEquals(expected, ChapterKeys.normalize("https://m.example.com/book/12/345.html"));
+        assertNotEquals(ChapterKeys.normalize("https://example.com/read?chapter=1"),
+                ChapterKeys.normalize("https://example.com/read?chapter=2"));
+    }
+
+    @Test
+    public void relativeUrlsAreOnlyTrimmed() {
+        assertEquals("/book/12/345.html", ChapterKeys.normalize(" /book/12/345.html "));
+    }
+
+    @Test
+    public void chapterKeyFollowsTheUrlNotTheIndex() {
+        ChapterInfo cached = new ChapterInfo(3, "第三章", URL);
+        ChapterInfo renumbered = new ChapterInfo(4, "第三章", "http://www.example.com/book/12/345.html/");
+        assertEquals(ChapterKeys.keyOf(cached), ChapterKeys.keyOf(renumbered));
+
+        ChapterKeys keys = ChapterKeys.of(List.of(
+                new ChapterInfo(0, "序章", "https://www.example.com/book/12/1.html"), renumbered));
+        assertEquals(1, keys.indexOf(ChapterKeys.keyOf(cached)));
+        assertEquals(-1, keys.indexOf(ChapterKeys.keyOf(new ChapterInfo(3, "x", "https://www.example.com/other"))));
+    }
+
+    @Test
+    public void chaptersWithoutUrlAreKeyedByIndex() {
+        ChapterKeys keys = ChapterKeys.of(List.of(new ChapterInfo(0, "a", null), new ChapterInfo(1, "b", " ")));
+        assertEquals(keys.keyAt(1), ChapterKeys.keyOf(new ChapterInfo(1, "b", null)));
+        assertNotEquals(keys.keyAt(0), keys.keyAt(1));
+    }
+
+    @Test
+    public void duplicateUrlsResolveToTheFirstIndex() {
+        ChapterKeys keys = ChapterKeys.of(List.of(
+                new ChapterInfo(0, "latest", URL),
+                new ChapterInfo(1, "other", "https://www.example.com/book/12/1.html"),
+                new ChapterInfo(2, "again", URL)));
+        assertEquals(0, keys.indexOf(keys.keyAt(2)));
+    }
+}
@@ -0,0 +1,113 @@
+package com.fish.toucher.service;
+
+import com.fish.toucher.model.ChapterInfo;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChapterListDiffTest {
+
+    @Test
+    public void newChaptersAtTheEndAreAppendOnly() {
+        List<ChapterInfo> cached = chapters("a", "b", "c");
+        ChapterListDiff diff = ChapterListDiff.compute(cached, chapters("a", "b", "c", "d", "e"));
+        assertTrue(diff.isAppendOnly());
+        assertFalse(diff.isUnchanged());
+        assertEquals(3, diff.getPreviousSize());
+        assertEquals(List.of("d", "e"), names(diff.getAdded()));
+        assertTrue(diff.getMoved().isEmpty());
+        assertEquals(2, diff.newIndexOf(2));
+    }
+
+    @Test
+    public void sameListIsUnchanged() {
+        ChapterListDiff diff = ChapterListDiff.compute(chapters("a", "b"), chapters("a", "b"));
+        assertTrue(diff.isUnchanged());
+        assertTrue(diff.getAdded().isEmpty());
+        assertTrue(ChapterListDiff.unchanged(chapters("a", "b")).isUnchanged());
+    }
+
+    @Test
+    public void nothingCachedCountsAsAppended() {
+        ChapterListDiff diff = ChapterListDiff.compute(null, chapters("a", "b"));
+        assertTrue(diff.isAppendOnly());
+        assertEquals(List.of("a", "b"), names(diff.getAdded()));
+    }
+
+    @Test
+    public void insertedChapterRenumbersTheRest() {
+        ChapterListDiff diff = ChapterListDiff.compute(chapters("a", "b", "c"), chapters("a", "x", "b", "c"));
+        assertFalse(diff.isAppendOnly());
+        assertTrue(diff.getAdded().isEmpty());
+        assertEquals(Map.of(1, 2, 2, 3), diff.getMoved());
+        assertTrue(diff.getRemoved().isEmpty());
+        assertEquals(0, diff.newIndexOf(0));
+        assertEquals(3, diff.newIndexOf(2));
+    }
+
+    @Test
+    public void removedChapterHasNoNewIndex() {
+        ChapterListDiff diff = ChapterListDiff.compute(chapters("a", "b", "c"), chapters("a", "c"));
+        assertFalse(diff.isAppendOnly());
+        assertEquals(List.of(1), diff.getRemoved());
+        assertEquals(-1, diff.newIndexOf(1));
+        assertEquals(1, diff.newIndexOf(2));
+    }
+
+    @Test
+    public void renamedChapterIsNotAppendOnly() {
+        List<ChapterInfo> fresh = chapters("a", "b", "c");
+        fresh.get(1).setName("b (revised)");
+        ChapterListDiff diff = ChapterListDiff.compute(chapters("a", "b"), fresh);
+        assertFalse(diff.isAppendOnly());
+        // Same URLs in the same places: nothing moved or removed
+        assertTrue(diff.getMoved().isEmpty());
+        assertTrue(diff.getRemoved().isEmpty());
+    }
+
+    @Test
+    public void duplicateUrlsAreMatchedInOrder() {
+        List<ChapterInfo> cached = chapters("a", "b", "a");
+        List<ChapterInfo> fresh = chapters("x", "a", "b", "a");
+        ChapterListDiff diff = ChapterListDiff.compute(cached, fresh);
+        assertEquals(Map.of(0, 1, 1, 2, 2, 3), diff.getMoved());
+    }
+
+    @Test
+    public void respelledUrlsStillMatch() {
+        List<ChapterInfo> fresh = chapters("a", "b", "c");
+        fresh.get(0).setChapterUrl("http://example.com/book/a.html");
+        fresh.get(1).setChapterUrl("https://example.com/book/b.html/");
+        ChapterListDiff diff = ChapterListDiff.compute(chapters("a", "b"), fresh);
+        assertTrue(diff.isAppendOnly());
+        assertEquals(List.of("c"), names(diff.getAdded()));
+
+        fresh.add(0, new ChapterInfo(0, "x", "https://example.com/book/x.html"));
+        diff = ChapterListDiff.compute(chapters("a", "b"), fresh);
+        assertEquals(Map.of(0, 1, 1, 2), diff.getMoved());
+        assertTrue(diff.getRemoved().isEmpty());
+    }
+
+    /** Chapters named after their URL's last segment. */
+    private static List<ChapterInfo> chapters(String... names) {
+        List<ChapterInfo> chapters = new ArrayList<>();
+        for (String name : names) {
+            chapters.add(new ChapterInfo(chapters.size(), name, "https://example.com/book/" + name + ".html"));
+        }
+        return chapters;
+    }
+
+    private static List<String> names(List<ChapterInfo> chapters) {
+        List<String> names = new ArrayList<>();
+        for (ChapterInfo chapter : chapters) {
+            names.add(chapter.getName());
+        }
+        return names;
+    }
+}
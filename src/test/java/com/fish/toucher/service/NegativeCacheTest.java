@@ -0,0 +1,85 @@
+package com.fish.toucher.service;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class NegativeCacheTest {
+
+    private static final String URL = "https://example.com/book/1.html";
+
+    private long now = 1_000_000;
+    private final NegativeCache cache = new NegativeCache(() -> now);
+
+    @Test
+    public void failureIsRememberedUntilItsClassExpires() {
+        FetchException notFound = new FetchException(URL, 404, "not found");
+        cache.record("src", URL, notFound);
+        assertSame(notFound, cache.lookup("src", URL));
+
+        now += NegativeCache.FailureClass.MISSING.ttlMs - 1;
+        assertSame(notFound, cache.lookup("src", URL));
+        now += 1;
+        assertNull(cache.lookup("src", URL));
+    }
+
+    @Test
+    public void networkFailuresExpireSoonerThanMissingPages() {
+        cache.record("src", URL, new FetchException(URL, FetchException.Kind.NETWORK, "reset"));
+        cache.record("src", URL + "?b", new FetchException(URL, 404, "not found"));
+        now += NegativeCache.FailureClass.NETWORK.ttlMs;
+        assertNull(cache.lookup("src", URL));
+        assertNotNull(cache.lookup("src", URL + "?b"));
+    }
+
+    @Test
+    public void serverErrorsUseTheServerClass() {
+        assertEquals(NegativeCache.FailureClass.SERVER,
+                NegativeCache.FailureClass.of(new FetchException(URL, 503, "unavailable")));
+        assertEquals(NegativeCache.FailureClass.SERVER,
+                NegativeCache.FailureClass.of(new FetchException(URL, 429, "slow down")));
+        assertEquals(NegativeCache.FailureClass.RULE,
+                NegativeCache.FailureClass.of(new FetchException(URL, FetchException.Kind.NO_MATCH, "nothing")));
+    }
+
+    @Test
+    public void ownDeadlineAndOpenCircuitAreNotRemembered() {
+        cache.record("src", URL, new FetchException(URL, FetchException.Kind.DEADLINE, "deadline"));
+        cache.record("src", URL + "?b", new FetchException(URL, FetchException.Kind.CIRCUIT_OPEN, "open"));
+        assertNull(cache.lookup("src", URL));
+        assertNull(cache.lookup("src", URL + "?b"));
+    }
+
+    @Test
+    public void failuresAreKeptPerSource() {
+        cache.record("a", URL, new FetchException(URL, 404, "not found"));
+        cache.record("b", URL, new FetchException(URL, 404, "not found"));
+        assertNull(cache.lookup("c", URL));
+
+        cache.invalidate("a");
+        assertNull(cache.lookup("a", URL));
+        assertNotNull(cache.lookup("b", URL));
+
+        cache.invalidateAll();
+        assertNull(cache.lookup("b", URL));
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryGoesFirstPastTheCap() {
+        FetchException error = new FetchException(URL, 404, "not found");
+        for (int i = 0; i < NegativeCache.MAX_ENTRIES; i++) {
+            cache.record("src", URL + "?" + i, error);
+        }
+        // Looking the first one up makes the second the least recently used
+        assertNotNull(cache.lookup("src", URL + "?0"));
+        cache.record("src", URL + "?new", error);
+
+        assertNotNull(cache.lookup("src", URL + "?0"));
+        assertNull(cache.lookup("src", URL + "?1"));
+        assertNotNull(cache.lookup("src", URL + "?2"));
+        assertNotNull(cache.lookup("src", URL + "?new"));
+    }
+}
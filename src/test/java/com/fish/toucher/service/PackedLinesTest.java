@@ -0,0 +1,64 @@
+package com.fish.toucher.service;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PackedLinesTest {
+
+    @Test
+    public void roundTripKeepsEveryLine() {
+        List<String> lines = Arrays.asList("第一章 开始", "", "plain ascii", "  indented  ",
+                "emoji 🐟", "");
+        byte[] packed = PackedLines.pack(lines);
+        assertTrue(PackedLines.isPacked(packed));
+        PackedLines wrapped = PackedLines.wrap(packed);
+        assertEquals(lines, wrapped);
+        assertEquals(packed.length, wrapped.byteSize());
+    }
+
+    @Test
+    public void emptyChapterRoundTrips() {
+        assertEquals(List.of(), PackedLines.wrap(PackedLines.pack(List.of())));
+    }
+
+    @Test
+    public void linesAreReadByIndexInAnyOrder() {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            lines.add("行 " + i + " " + "x".repeat(i % 37));
+        }
+        PackedLines wrapped = PackedLines.wrap(PackedLines.pack(lines));
+        assertEquals(lines.size(), wrapped.size());
+        Random random = new Random(42);
+        for (int n = 0; n < 2000; n++) {
+            int i = random.nextInt(lines.size());
+            assertEquals(lines.get(i), wrapped.get(i));
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void indexPastTheEndIsRejected() {
+        PackedLines.wrap(PackedLines.pack(List.of("a", "b"))).get(2);
+    }
+
+    @Test
+    public void plainTextIsNotPacked() {
+        assertFalse(PackedLines.isPacked("第一章\nline".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(PackedLines.isPacked(new byte[]{PackedLines.MARKER}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void truncatedDataIsRejected() {
+        byte[] packed = PackedLines.pack(List.of("one", "two"));
+        PackedLines.wrap(Arrays.copyOf(packed, packed.length - 1));
+    }
+}